@@ -0,0 +1,55 @@
+package com.mypopsy.widget.internal;
+
+import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.BOTTOM;
+import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.LEFT;
+import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.RIGHT;
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class RoundRectDrawableWithShadowTest {
+
+    private final Canvas mCanvas = new Canvas(Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888));
+
+    @Test
+    public void sameShadowFlagsDoNotRebuild() {
+        final RoundRectDrawableWithShadow drawable = new RoundRectDrawableWithShadow(Color.WHITE, 8, 4, 4);
+        drawable.setBounds(0, 0, 200, 100);
+        drawable.setShadow(LEFT|RIGHT|BOTTOM);
+        drawable.draw(mCanvas);
+        final int builds = drawable.getBuildCount();
+
+        for (int i = 0; i < 10; i++) {
+            drawable.setShadow(LEFT|RIGHT|BOTTOM);
+            drawable.draw(mCanvas);
+        }
+        assertEquals(builds, drawable.getBuildCount());
+
+        drawable.setShadow(LEFT|RIGHT);
+        drawable.draw(mCanvas);
+        assertEquals(builds + 1, drawable.getBuildCount());
+    }
+
+    @Test
+    public void sameShadowFlagsDoNotRebuildWithShadowCache() {
+        final RoundRectDrawableWithShadow drawable = new RoundRectDrawableWithShadow(Color.WHITE, 8, 4, 4);
+        drawable.setShadowCacheEnabled(true);
+        drawable.setBounds(0, 0, 200, 100);
+        drawable.draw(mCanvas);
+        final int builds = drawable.getBuildCount();
+
+        for (int i = 0; i < 10; i++) {
+            drawable.setShadow(drawable.mShadowFlags);
+            drawable.draw(mCanvas);
+        }
+        assertEquals(builds, drawable.getBuildCount());
+    }
+}
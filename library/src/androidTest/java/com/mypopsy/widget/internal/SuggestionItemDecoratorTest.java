@@ -0,0 +1,83 @@
+package com.mypopsy.widget.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class SuggestionItemDecoratorTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 400;
+    private static final int ROW_HEIGHT = 40;
+
+    @Test
+    public void stableContinuousCardIsNotRebuilt() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (boolean shadowCache : new boolean[]{false, true}) {
+                final RoundRectDrawableWithShadow template = new RoundRectDrawableWithShadow(Color.WHITE, 8, 4, 4);
+                template.setShadowCacheEnabled(shadowCache);
+                final SuggestionItemDecorator decorator = new SuggestionItemDecorator(template);
+                decorator.setContinuousCard(true);
+                final RecyclerView list = createList(decorator);
+                final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+                // the first frame builds the card
+                list.draw(canvas);
+                for (int i = 0; i < 5; i++) {
+                    // outline queries, as done by the elevation renderer, must not rebuild it either
+                    decorator.getContinuousCardBounds(list, new Rect());
+                    assertTrue(decorator.getContinuousCardOutline(list, new Outline()));
+                    list.draw(canvas);
+                    assertEquals(0, decorator.getLastFrameRebuildCount());
+                }
+            }
+        });
+    }
+
+    private static RecyclerView createList(SuggestionItemDecorator decorator) {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final RecyclerView list = new RecyclerView(context);
+        list.setLayoutManager(new LinearLayoutManager(context));
+        list.addItemDecoration(decorator);
+        list.setAdapter(new RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+            @NonNull
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+                final View view = new View(parent.getContext());
+                view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+                return new RecyclerView.ViewHolder(view) {};
+            }
+
+            @Override
+            public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            }
+
+            @Override
+            public int getItemCount() {
+                return 3;
+            }
+        });
+        list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, WIDTH, HEIGHT);
+        return list;
+    }
+}
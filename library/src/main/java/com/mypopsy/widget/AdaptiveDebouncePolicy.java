@@ -0,0 +1,118 @@
+package com.mypopsy.widget;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Debounces queries from the measured typing speed and backend latency.
+ *
+ * The window follows the (smoothed) interval between keystrokes, scaled by how slow the backend
+ * is: requests to a fast backend are cheap and can be issued eagerly, while a slow backend
+ * deserves waiting for the user to really pause. It is bounded by a minimum and a maximum.
+ *
+ * The backend latency is a high percentile of the recent responses, rather than an average,
+ * so that a single outlier does not swing the window.
+ */
+public class AdaptiveDebouncePolicy implements DebouncePolicy {
+
+    public interface OnDebounceListener {
+        /**
+         * Called for every query with the chosen window and the measures it is based on,
+         * which are -1 until measured.
+         */
+        @MainThread
+        void onDebounce(@NonNull String query, long debounceMillis, long typingIntervalMillis,
+                        long latencyMillis);
+    }
+
+    public static final long DEFAULT_MIN_DEBOUNCE = 150; // milliseconds
+    public static final long DEFAULT_MAX_DEBOUNCE = 700; // milliseconds
+
+    // the debounce window is this factor of the average keystroke interval
+    private static final float DEBOUNCE_FACTOR = 1.5f;
+    // weight of the last sample in the keystroke interval moving average
+    private static final float SMOOTHING = 0.3f;
+    // number of recent response latencies the percentile is taken from
+    private static final int LATENCY_SAMPLES = 16;
+    private static final int MIN_LATENCY_SAMPLES = 3;
+    private static final float LATENCY_PERCENTILE = .9f;
+    // latency above which the backend is considered slow
+    private static final long LATENCY_REFERENCE = 500; // milliseconds
+
+    private final long mMinDebounce;
+    private final long mMaxDebounce;
+
+    private long mLastKeystroke;
+    private float mAverageInterval = -1;
+    // ring buffer of the recent latencies, guarded by itself
+    private final long[] mLatencies = new long[LATENCY_SAMPLES];
+    private final long[] mSortedLatencies = new long[LATENCY_SAMPLES];
+    private int mLatencyCount;
+    private int mNextLatency;
+    // the latency percentile, published by onResponse() from any thread
+    private volatile long mLatency = -1;
+    private OnDebounceListener mListener;
+
+    public AdaptiveDebouncePolicy() {
+        this(DEFAULT_MIN_DEBOUNCE, DEFAULT_MAX_DEBOUNCE);
+    }
+
+    public AdaptiveDebouncePolicy(long minDebounce, long maxDebounce) {
+        if (minDebounce < 0 || maxDebounce < minDebounce)
+            throw new IllegalArgumentException("invalid debounce");
+        mMinDebounce = minDebounce;
+        mMaxDebounce = maxDebounce;
+    }
+
+    public void setOnDebounceListener(@Nullable OnDebounceListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void onKeystroke(long uptimeMillis) {
+        final long interval = uptimeMillis - mLastKeystroke;
+        // long pauses are not typing: left out of the average, rather than inflating it
+        if (mLastKeystroke != 0 && interval <= mMaxDebounce) {
+            mAverageInterval = mAverageInterval < 0 ? interval
+                    : SMOOTHING * interval + (1 - SMOOTHING) * mAverageInterval;
+        }
+        mLastKeystroke = uptimeMillis;
+    }
+
+    @Override
+    public long getDebounce(@NonNull String query) {
+        final long latency = mLatency;
+        final long debounce;
+        if (mAverageInterval < 0) {
+            debounce = mMaxDebounce;
+        } else {
+            // from half the window on instant backends, to the full window on slow ones
+            float scale = .5f + (latency < 0 ? .5f : Math.min(1f, (float) latency / LATENCY_REFERENCE));
+            debounce = Math.max(mMinDebounce, Math.min(mMaxDebounce,
+                    (long) (mAverageInterval * DEBOUNCE_FACTOR * scale)));
+        }
+        if (mListener != null)
+            mListener.onDebounce(query, debounce, (long) mAverageInterval, latency);
+        return debounce;
+    }
+
+    @Override
+    public void onResponse(long latencyMillis) {
+        if (latencyMillis < 0) return;
+        synchronized (mLatencies) {
+            mLatencies[mNextLatency] = latencyMillis;
+            mNextLatency = (mNextLatency + 1) % LATENCY_SAMPLES;
+            if (mLatencyCount < LATENCY_SAMPLES) mLatencyCount++;
+            if (mLatencyCount < MIN_LATENCY_SAMPLES) return;
+            System.arraycopy(mLatencies, 0, mSortedLatencies, 0, mLatencyCount);
+            Arrays.sort(mSortedLatencies, 0, mLatencyCount);
+            final long latency = mSortedLatencies[Math.min(mLatencyCount - 1,
+                    (int) (LATENCY_PERCENTILE * mLatencyCount))];
+            // a single write: getDebounce() never sees a partial update
+            mLatency = latency;
+        }
+    }
+}
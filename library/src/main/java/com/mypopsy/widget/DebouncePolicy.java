@@ -0,0 +1,33 @@
+package com.mypopsy.widget;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Chooses how long a query waits for the next keystroke before reaching the
+ * {@link SuggestionsProvider}.
+ *
+ * @see FloatingSearchView#setDebouncePolicy(DebouncePolicy)
+ * @see AdaptiveDebouncePolicy
+ */
+public interface DebouncePolicy {
+
+    /**
+     * Called for every change of the query text, before {@link #getDebounce(String)}.
+     */
+    @MainThread
+    void onKeystroke(long uptimeMillis);
+
+    /**
+     * Returns how long the given query is debounced, in milliseconds.
+     */
+    @MainThread
+    long getDebounce(@NonNull String query);
+
+    /**
+     * Reports the latency of a backend call made for a query, from any thread. Responses which
+     * did not cost a call of their own, e.g. served from a cache or shared with another query,
+     * should not be reported.
+     */
+    void onResponse(long latencyMillis);
+}
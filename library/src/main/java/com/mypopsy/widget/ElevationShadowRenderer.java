@@ -0,0 +1,153 @@
+package com.mypopsy.widget;
+
+import android.graphics.Outline;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
+import android.view.ViewTreeObserver;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mypopsy.widget.internal.RoundRectDrawableWithShadow;
+import com.mypopsy.widget.internal.SuggestionItemDecorator;
+
+/**
+ * Renders shadows through the native view elevation, which are drawn by the RenderThread.
+ *
+ * Cards are still drawn by {@link RoundRectDrawableWithShadow} (without their shadow) and
+ * keep the same padding, so that switching renderers does not affect the layout.
+ *
+ * Shadow flags are only approximated: an outline casts its shadow all around, so sides without
+ * shadow are pushed out by the corner radius instead, see
+ * {@link RoundRectDrawableWithShadow#getOutline(Outline)}. Their shadow lies underneath the
+ * adjacent content, or is clipped by the bounds of the suggestions container, but shows where
+ * neither applies, e.g. below the search bar while the suggestions slide in.
+ */
+public class ElevationShadowRenderer implements ShadowRenderer {
+
+    private RecyclerView mSuggestions;
+    private SuggestionItemDecorator mDecorator;
+    private final Rect mLastBounds = new Rect();
+    private final Rect mBounds = new Rect();
+    private float mLastAlpha;
+
+    // what the rows looked like when the card was last computed
+    private int mLastItemCount = -1;
+    private int mLastChildCount = -1;
+    private float mLastTop;
+    private float mLastBottom;
+
+    // the views state before install(), restored by uninstall()
+    private ViewOutlineProvider mSearchBarOutline;
+    private float mSearchBarElevation;
+    private ViewOutlineProvider mSuggestionsOutlineBefore;
+    private float mSuggestionsElevation;
+    private ViewOutlineProvider mContainerOutline;
+    private float mContainerElevation;
+    private boolean mSearchBackgroundDrawShadow;
+    private boolean mDecoratorDrawShadow;
+
+    private final ViewOutlineProvider mSuggestionsOutline = new ViewOutlineProvider() {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            if (!mDecorator.getContinuousCardOutline(mSuggestions, outline))
+                outline.setEmpty();
+        }
+    };
+
+    // the card follows the animated rows: keep the outline in sync before each frame
+    private final ViewTreeObserver.OnPreDrawListener mPreDrawListener = () -> {
+        if (mSuggestions.getVisibility() != View.VISIBLE) return true;
+        if (!hasRowsChanged()) return true;
+        float alpha = mDecorator.getContinuousCardBounds(mSuggestions, mBounds);
+        if (alpha != mLastAlpha || !mBounds.equals(mLastBounds)) {
+            mLastAlpha = alpha;
+            mLastBounds.set(mBounds);
+            mSuggestions.invalidateOutline();
+        }
+        return true;
+    };
+
+    /**
+     * Cheaply tells whether the rows may have moved since the card was last computed: while
+     * the rows are animated, or when they were scrolled, translated, added or removed.
+     */
+    private boolean hasRowsChanged() {
+        final RecyclerView.Adapter<?> adapter = mSuggestions.getAdapter();
+        final int itemCount = adapter != null ? adapter.getItemCount() : 0;
+        final int childCount = mSuggestions.getChildCount();
+        float top = 0, bottom = 0;
+        if (childCount > 0) {
+            final View first = mSuggestions.getChildAt(0);
+            final View last = mSuggestions.getChildAt(childCount - 1);
+            top = first.getTop() + first.getTranslationY();
+            bottom = last.getBottom() + last.getTranslationY();
+        }
+        if (!mSuggestions.isAnimating() && itemCount == mLastItemCount
+                && childCount == mLastChildCount && top == mLastTop && bottom == mLastBottom)
+            return false;
+        mLastItemCount = itemCount;
+        mLastChildCount = childCount;
+        mLastTop = top;
+        mLastBottom = bottom;
+        return true;
+    }
+
+    @Override
+    public void install(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                        RecyclerView suggestions, SuggestionItemDecorator decorator) {
+        mSuggestions = suggestions;
+        mDecorator = decorator;
+
+        final float elevation = searchBackground.getShadowSize();
+        final ViewGroup container = (ViewGroup) suggestions.getParent();
+
+        mSearchBarOutline = searchBar.getOutlineProvider();
+        mSearchBarElevation = searchBar.getElevation();
+        mSuggestionsOutlineBefore = suggestions.getOutlineProvider();
+        mSuggestionsElevation = suggestions.getElevation();
+        mContainerOutline = container.getOutlineProvider();
+        mContainerElevation = container.getElevation();
+        mSearchBackgroundDrawShadow = searchBackground.getDrawShadow();
+        mDecoratorDrawShadow = decorator.getDrawShadow();
+        mLastItemCount = -1;
+
+        searchBackground.setDrawShadow(false);
+        searchBar.setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+        searchBar.setElevation(elevation);
+
+        decorator.setDrawShadow(false);
+        suggestions.setOutlineProvider(mSuggestionsOutline);
+        suggestions.setElevation(elevation);
+        suggestions.invalidateItemDecorations();
+        suggestions.getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+
+        // same Z as the search bar, so that the suggestions keep being drawn on top of it
+        container.setOutlineProvider(null);
+        container.setElevation(elevation);
+    }
+
+    @Override
+    public void uninstall(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                          RecyclerView suggestions, SuggestionItemDecorator decorator) {
+        searchBackground.setDrawShadow(mSearchBackgroundDrawShadow);
+        searchBar.setElevation(mSearchBarElevation);
+        searchBar.setOutlineProvider(mSearchBarOutline);
+
+        decorator.setDrawShadow(mDecoratorDrawShadow);
+        suggestions.invalidateItemDecorations();
+
+        suggestions.getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        suggestions.setElevation(mSuggestionsElevation);
+        suggestions.setOutlineProvider(mSuggestionsOutlineBefore);
+
+        ViewGroup container = (ViewGroup) suggestions.getParent();
+        container.setElevation(mContainerElevation);
+        container.setOutlineProvider(mContainerOutline);
+
+        mSearchBarOutline = mSuggestionsOutlineBefore = mContainerOutline = null;
+        mSuggestions = null;
+        mDecorator = null;
+    }
+}
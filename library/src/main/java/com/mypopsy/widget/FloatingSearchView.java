@@ -5,8 +5,9 @@ import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.LEFT;
 import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.RIGHT;
 import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.TOP;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.LayoutTransition;
-import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.app.Activity;
@@ -16,8 +17,11 @@ import android.content.res.TypedArray;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.HapticFeedbackConstants;
 import android.view.KeyEvent;
 import android.view.Menu;
@@ -40,8 +44,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.StyleRes;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.core.view.MarginLayoutParamsCompat;
-import androidx.core.view.ViewCompat;
-import androidx.core.view.ViewPropertyAnimatorCompat;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.mypopsy.floatingsearchview.R;
 import com.mypopsy.widget.adapter.CustomRecyclerView;
@@ -51,6 +54,9 @@ import com.mypopsy.widget.internal.ViewUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FloatingSearchView extends RelativeLayout {
 
@@ -61,6 +67,9 @@ public class FloatingSearchView extends RelativeLayout {
     private static final int DEFAULT_ELEVATION = 2;
     private static final int DEFAULT_MAX_ELEVATION = 2;
 
+    private static final int SHADOW_RENDERER_SOFTWARE = 0;
+    private static final int SHADOW_RENDERER_ELEVATION = 1;
+
     private static final long DEFAULT_DURATION_ENTER = 300;
     private static final long DEFAULT_DURATION_EXIT = 400;
 
@@ -79,12 +88,28 @@ public class FloatingSearchView extends RelativeLayout {
             onChanged();
         }
 
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
+
         @Override
         public void onChanged() {
-            updateSuggestionsVisibility();
+            scheduleSuggestionsUpdate();
         }
     };
 
+    // coalesces adapter notifications: suggestions are updated at most once per frame
+    private final Choreographer.FrameCallback mSuggestionsUpdate = frameTimeNanos -> {
+        mSuggestionsUpdateScheduled = false;
+        updateSuggestionsVisibility();
+    };
+
     public interface OnSearchListener {
         void onSearchAction(CharSequence text);
     }
@@ -111,8 +136,34 @@ public class FloatingSearchView extends RelativeLayout {
     final private List<Integer> mAlwaysShowingMenu = new ArrayList<>();
 
     private OnSearchFocusChangedListener mFocusListener;
+    private ShadowRenderer mShadowRenderer;
+    // read from the xml attributes, until installed
+    private ShadowRenderer mPendingShadowRenderer;
+    private QueryDispatcher mQueryDispatcher;
+    private DebouncePolicy mDebouncePolicy = new AdaptiveDebouncePolicy();
+    private int mMinQueryLength = QueryDispatcher.DEFAULT_MIN_LENGTH;
     private Drawable mBackgroundDrawable;
+    private int mBackgroundAlpha;
+    private final ValueAnimator mBackgroundAnimator = new ValueAnimator();
+    private final ValueAnimator mSuggestionsAnimator = new ValueAnimator();
     private boolean mSuggestionsShown;
+    private boolean mSuggestionsUpdateScheduled;
+    private int mPrewarmCount;
+    private int mPrewarmViewType;
+    private boolean mPrewarmScheduled;
+    private boolean mPrewarmInFlight;
+    // set once the adapter failed to create a view holder off the main thread
+    private boolean mPrewarmOnMainThread;
+
+    // starts one view holder per idle pass of the main looper, the next one once it is pooled
+    private final MessageQueue.IdleHandler mPrewarmer = () -> {
+        mPrewarmScheduled = false;
+        prewarmViewHolder();
+        return false;
+    };
+
+    // inflates prewarmed view holders, one at a time, for all the search views
+    private static ExecutorService sPrewarmExecutor;
 
     public FloatingSearchView(Context context) {
         this(context, null);
@@ -155,6 +206,8 @@ public class FloatingSearchView extends RelativeLayout {
 
         applyXmlAttributes(attrs, defStyleAttr, 0);
         setupViews();
+        setShadowRenderer(mPendingShadowRenderer);
+        mPendingShadowRenderer = null;
     }
 
     private void applyXmlAttributes(AttributeSet attrs, @AttrRes int defStyleAttr, @StyleRes int defStyleRes) {
@@ -200,6 +253,12 @@ public class FloatingSearchView extends RelativeLayout {
         setContentBackgroundColor(a.getColor(R.styleable.FloatingSearchView_fsv_contentBackgroundColor, DEFAULT_CONTENT_COLOR));
         setRadius(a.getDimensionPixelSize(R.styleable.FloatingSearchView_fsv_cornerRadius, ViewUtils.dpToPx(DEFAULT_RADIUS)));
         setHint(a.getString(R.styleable.FloatingSearchView_android_hint));
+        setShadowCacheEnabled(a.getBoolean(R.styleable.FloatingSearchView_fsv_shadowCache, false));
+        setContinuousSuggestionsCard(a.getBoolean(R.styleable.FloatingSearchView_fsv_continuousSuggestionsCard, false));
+        // installed once the views are set up
+        mPendingShadowRenderer = a.getInt(R.styleable.FloatingSearchView_fsv_shadowRenderer, SHADOW_RENDERER_SOFTWARE)
+                == SHADOW_RENDERER_ELEVATION ? new ElevationShadowRenderer() : new SoftwareShadowRenderer();
+        setPrewarmedViewHolders(a.getInt(R.styleable.FloatingSearchView_fsv_prewarmedViewHolders, 0));
 
         a.recycle();
     }
@@ -228,7 +287,33 @@ public class FloatingSearchView extends RelativeLayout {
             mBackgroundDrawable = new ColorDrawable(DEFAULT_BACKGROUND_COLOR);
 
         setBackground(mBackgroundDrawable);
-        mBackgroundDrawable.setAlpha(0);
+        setBackgroundAlpha(0);
+
+        mBackgroundAnimator.addUpdateListener(animation ->
+                setBackgroundAlpha((int) animation.getAnimatedValue()));
+
+        mSuggestionsAnimator.addUpdateListener(animation ->
+                mRecyclerView.setTranslationY((float) animation.getAnimatedValue()));
+        mSuggestionsAnimator.addListener(new AnimatorListenerAdapter() {
+            private boolean mCanceled;
+
+            @Override
+            public void onAnimationStart(Animator animation) {
+                mCanceled = false;
+                mRecyclerView.setLayerType(LAYER_TYPE_HARDWARE, null);
+            }
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                mCanceled = true;
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mRecyclerView.setLayerType(LAYER_TYPE_NONE, null);
+                if (!mCanceled) onSuggestionsAnimationEnd();
+            }
+        });
 
 //        mNavButtonView.setOnClickListener(v -> {
 //            if(mNavigationClickListener != null)
@@ -267,6 +352,40 @@ public class FloatingSearchView extends RelativeLayout {
         mCardDecorator.setBackgroundColor(color);
     }
 
+    /**
+     * Draw shadows from pre-rendered bitmaps shared across drawables, instead of
+     * rendering them with gradient shaders on every frame.
+     */
+    public void setShadowCacheEnabled(boolean enabled) {
+        mSearchBackground.setShadowCacheEnabled(enabled);
+        mCardDecorator.setShadowCacheEnabled(enabled);
+    }
+
+    /**
+     * Draw the suggestions background as one continuous card in a single pass,
+     * instead of one card per suggestion row.
+     */
+    public void setContinuousSuggestionsCard(boolean enabled) {
+        mCardDecorator.setContinuousCard(enabled);
+        mRecyclerView.invalidateItemDecorations();
+    }
+
+    /**
+     * Sets the strategy rendering the shadows of the search bar and of the suggestions,
+     * e.g. {@link ElevationShadowRenderer} to have them rendered by the RenderThread.
+     */
+    public void setShadowRenderer(@NonNull ShadowRenderer renderer) {
+        if (renderer == mShadowRenderer) return;
+        if (mShadowRenderer != null)
+            mShadowRenderer.uninstall(mSearchContainer, mSearchBackground, mRecyclerView, mCardDecorator);
+        mShadowRenderer = renderer;
+        mShadowRenderer.install(mSearchContainer, mSearchBackground, mRecyclerView, mCardDecorator);
+    }
+
+    public ShadowRenderer getShadowRenderer() {
+        return mShadowRenderer;
+    }
+
     public void setOnSearchListener(final OnSearchListener listener) {
         mSearchInput.setOnKeyListener((v, keyCode, event) -> {
             if (keyCode != KeyEvent.KEYCODE_ENTER) return false;
@@ -324,11 +443,173 @@ public class FloatingSearchView extends RelativeLayout {
         mSearchInput.removeTextChangedListener(textWatcher);
     }
 
+    /**
+     * Sets the provider queried for suggestions as the user types. Queries are debounced,
+     * de-duplicated and ignored below a minimum length, and superseded requests are cancelled.
+     *
+     * @see #setDebouncePolicy(DebouncePolicy)
+     * @see #setMinQueryLength(int)
+     */
+    public void setSuggestionsProvider(@Nullable SuggestionsProvider provider) {
+        if (mQueryDispatcher != null) {
+            mQueryDispatcher.cancel();
+            mSearchInput.removeTextChangedListener(mQueryDispatcher);
+            mQueryDispatcher = null;
+        }
+        if (provider == null) return;
+        mQueryDispatcher = new QueryDispatcher(provider, mDebouncePolicy);
+        mQueryDispatcher.setMinLength(mMinQueryLength);
+        mSearchInput.addTextChangedListener(mQueryDispatcher);
+    }
+
+    /**
+     * Sets how long queries are debounced before reaching the {@link SuggestionsProvider}.
+     * Defaults to an {@link AdaptiveDebouncePolicy}.
+     */
+    public void setDebouncePolicy(@NonNull DebouncePolicy policy) {
+        mDebouncePolicy = policy;
+        if (mQueryDispatcher != null) mQueryDispatcher.setDebouncePolicy(policy);
+    }
+
+    @NonNull
+    public DebouncePolicy getDebouncePolicy() {
+        return mDebouncePolicy;
+    }
+
+    /**
+     * Sets the bounds of the query debounce window, which adapts to the typing speed.
+     *
+     * @see #setDebouncePolicy(DebouncePolicy)
+     */
+    public void setQueryDebounce(long minMillis, long maxMillis) {
+        setDebouncePolicy(new AdaptiveDebouncePolicy(minMillis, maxMillis));
+    }
+
+    /**
+     * Sets the minimum length of a query to be sent to the {@link SuggestionsProvider}.
+     */
+    public void setMinQueryLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("invalid minimum length");
+        mMinQueryLength = length;
+        if (mQueryDispatcher != null) mQueryDispatcher.setMinLength(length);
+    }
+
     public void setAdapter(CustomRecyclerView.Adapter<? extends CustomRecyclerView.ViewHolder> adapter) {
         CustomRecyclerView.Adapter<? extends CustomRecyclerView.ViewHolder> old = getAdapter();
         if (old != null) old.unregisterAdapterDataObserver(mAdapterObserver);
         adapter.registerAdapterDataObserver(mAdapterObserver);
         mRecyclerView.setAdapter(adapter);
+        schedulePrewarm();
+    }
+
+    /**
+     * Sets how many suggestion view holders (of view type 0) are created ahead of time, while the
+     * main thread is idle after this view is attached, so that the first suggestions show up
+     * without inflation cost.
+     *
+     * @see #setPrewarmedViewHolders(int, int)
+     */
+    public void setPrewarmedViewHolders(int count) {
+        setPrewarmedViewHolders(0, count);
+    }
+
+    /**
+     * Sets how many suggestion view holders of the given type are created ahead of time, into
+     * the {@link RecyclerView.RecycledViewPool} of the suggestions.
+     *
+     * View holders are created on a worker thread, as with an AsyncLayoutInflater: when the
+     * adapter can't create them there (e.g. a view creates a Handler), they are created on the
+     * main thread instead. As a pool keeps 5 view holders per type by default, the limit of the
+     * type is raised to the given count when needed, and left so: a shared pool keeps it too.
+     */
+    public void setPrewarmedViewHolders(int viewType, int count) {
+        if (count < 0) throw new IllegalArgumentException("invalid count");
+        mPrewarmViewType = viewType;
+        mPrewarmCount = count;
+        schedulePrewarm();
+    }
+
+    /**
+     * Sets the pool of the suggestion view holders, e.g. to share prewarmed view holders between
+     * several search views.
+     */
+    public void setRecycledViewPool(@Nullable RecyclerView.RecycledViewPool pool) {
+        mRecyclerView.setRecycledViewPool(pool);
+        schedulePrewarm();
+    }
+
+    @NonNull
+    public RecyclerView.RecycledViewPool getRecycledViewPool() {
+        return mRecyclerView.getRecycledViewPool();
+    }
+
+    private void schedulePrewarm() {
+        if (mPrewarmScheduled || mPrewarmInFlight || mPrewarmCount == 0 || getAdapter() == null
+                || !isAttachedToWindow())
+            return;
+        mPrewarmScheduled = true;
+        Looper.myQueue().addIdleHandler(mPrewarmer);
+    }
+
+    private void cancelPrewarm() {
+        if (!mPrewarmScheduled) return;
+        Looper.myQueue().removeIdleHandler(mPrewarmer);
+        mPrewarmScheduled = false;
+    }
+
+    /**
+     * Creates one view holder for the pool, if not warm yet, off the main thread when possible.
+     * The pool is only accessed from the main thread.
+     */
+    private void prewarmViewHolder() {
+        final RecyclerView.Adapter<? extends RecyclerView.ViewHolder> adapter = getAdapter();
+        if (adapter == null || !isAttachedToWindow() || isPoolWarm()) return;
+        final int viewType = mPrewarmViewType;
+        if (mPrewarmOnMainThread) {
+            putPrewarmedViewHolder(adapter.createViewHolder(mRecyclerView, viewType));
+            schedulePrewarm();
+            return;
+        }
+        mPrewarmInFlight = true;
+        getPrewarmExecutor().execute(() -> {
+            RecyclerView.ViewHolder holder;
+            try {
+                holder = adapter.createViewHolder(mRecyclerView, viewType);
+            } catch (RuntimeException e) {
+                holder = null;
+            }
+            final RecyclerView.ViewHolder created = holder;
+            // runs once attached again, if detached meanwhile
+            post(() -> {
+                mPrewarmInFlight = false;
+                if (created == null) mPrewarmOnMainThread = true;
+                else if (adapter == getAdapter() && viewType == mPrewarmViewType && !isPoolWarm())
+                    putPrewarmedViewHolder(created);
+                schedulePrewarm();
+            });
+        });
+    }
+
+    private boolean isPoolWarm() {
+        // held view holders don't need to wait in the pool
+        final int needed = mPrewarmCount - mRecyclerView.getChildCount();
+        return getRecycledViewPool().getRecycledViewCount(mPrewarmViewType) >= needed;
+    }
+
+    private void putPrewarmedViewHolder(RecyclerView.ViewHolder holder) {
+        final RecyclerView.RecycledViewPool pool = getRecycledViewPool();
+        final int count = pool.getRecycledViewCount(mPrewarmViewType);
+        pool.putRecycledView(holder);
+        if (pool.getRecycledViewCount(mPrewarmViewType) > count) return;
+        // the pool is full: raise its limit, which it doesn't expose, just enough
+        pool.setMaxRecycledViews(mPrewarmViewType, count + 1);
+        pool.putRecycledView(holder);
+    }
+
+    private static synchronized ExecutorService getPrewarmExecutor() {
+        if (sPrewarmExecutor == null)
+            sPrewarmExecutor = Executors.newSingleThreadExecutor(new PrewarmThreadFactory());
+        return sPrewarmExecutor;
     }
 
     public void setItemAnimator(CustomRecyclerView.ItemAnimator itemAnimator) {
@@ -346,10 +627,20 @@ public class FloatingSearchView extends RelativeLayout {
     }
 
     private void fadeIn(boolean enter) {
-        ValueAnimator backgroundAnim = ObjectAnimator.ofInt(mBackgroundDrawable, "alpha", enter ? 255 : 0);
-        backgroundAnim.setDuration(enter ? DEFAULT_DURATION_ENTER : DEFAULT_DURATION_EXIT);
-        backgroundAnim.setInterpolator(enter ? DECELERATE : ACCELERATE);
-        backgroundAnim.start();
+        final int to = enter ? 255 : 0;
+        mBackgroundAnimator.cancel();
+        if (mBackgroundAlpha == to) return;
+        // resume from the current alpha, over the remaining fraction of the duration
+        final long duration = enter ? DEFAULT_DURATION_ENTER : DEFAULT_DURATION_EXIT;
+        mBackgroundAnimator.setIntValues(mBackgroundAlpha, to);
+        mBackgroundAnimator.setDuration(duration * Math.abs(to - mBackgroundAlpha) / 255);
+        mBackgroundAnimator.setInterpolator(enter ? DECELERATE : ACCELERATE);
+        mBackgroundAnimator.start();
+    }
+
+    private void setBackgroundAlpha(int alpha) {
+        mBackgroundAlpha = alpha;
+        mBackgroundDrawable.setAlpha(alpha);
     }
 
     private int getSuggestionsCount() {
@@ -358,7 +649,18 @@ public class FloatingSearchView extends RelativeLayout {
         return adapter.getItemCount();
     }
 
+    private void scheduleSuggestionsUpdate() {
+        if (mSuggestionsUpdateScheduled) return;
+        mSuggestionsUpdateScheduled = true;
+        Choreographer.getInstance().postFrameCallback(mSuggestionsUpdate);
+    }
+
     private void updateSuggestionsVisibility() {
+        if (mSuggestionsUpdateScheduled) {
+            // an immediate update supersedes the pending one
+            Choreographer.getInstance().removeFrameCallback(mSuggestionsUpdate);
+            mSuggestionsUpdateScheduled = false;
+        }
         showSuggestions(isActivated() && getSuggestionsCount() > 0);
     }
 
@@ -370,20 +672,11 @@ public class FloatingSearchView extends RelativeLayout {
         if (show == suggestionsShown()) return;
 
         mSuggestionsShown = show;
+        mSuggestionsAnimator.cancel();
 
         int childCount = mRecyclerView.getChildCount();
         int translation = 0;
 
-        final Runnable endAction = () -> {
-            if (show)
-                updateDivider();
-            else {
-                showDivider(false);
-                mRecyclerView.setVisibility(View.INVISIBLE);
-                mRecyclerView.setTranslationY(-mRecyclerView.getHeight());
-            }
-        };
-
         if (show) {
             updateDivider();
             mRecyclerView.setVisibility(VISIBLE);
@@ -394,17 +687,29 @@ public class FloatingSearchView extends RelativeLayout {
         else
             showDivider(false);
 
-        ViewPropertyAnimatorCompat listAnim = ViewCompat.animate(mRecyclerView)
-                .translationY(translation)
-                .setDuration(show ? DEFAULT_DURATION_ENTER : DEFAULT_DURATION_EXIT)
-                .setInterpolator(show ? DECELERATE : ACCELERATE)
-                .withLayer()
-                .withEndAction(endAction);
+        if (show || childCount > 0) {
+            // resume from the current translation, over the remaining fraction of the duration
+            final float from = mRecyclerView.getTranslationY();
+            final float distance = show ? mRecyclerView.getHeight() : -translation;
+            final long duration = show ? DEFAULT_DURATION_ENTER : DEFAULT_DURATION_EXIT;
+            mSuggestionsAnimator.setFloatValues(from, translation);
+            mSuggestionsAnimator.setDuration(distance > 0
+                    ? (long) (duration * Math.min(1, Math.abs(translation - from) / distance))
+                    : duration);
+            mSuggestionsAnimator.setInterpolator(show ? DECELERATE : ACCELERATE);
+            mSuggestionsAnimator.start();
+        } else
+            onSuggestionsAnimationEnd();
+    }
 
-        if (show || childCount > 0)
-            listAnim.start();
-        else
-            endAction.run();
+    private void onSuggestionsAnimationEnd() {
+        if (mSuggestionsShown)
+            updateDivider();
+        else {
+            showDivider(false);
+            mRecyclerView.setVisibility(View.INVISIBLE);
+            mRecyclerView.setTranslationY(-mRecyclerView.getHeight());
+        }
     }
 
     private void showDivider(boolean visible) {
@@ -412,12 +717,33 @@ public class FloatingSearchView extends RelativeLayout {
         int shadows = TOP | LEFT | RIGHT;
         if (!visible) shadows |= BOTTOM;
         mSearchBackground.setShadow(shadows);
+        mSearchContainer.invalidateOutline();
     }
 
     private void updateDivider() {
         showDivider(isActivated() && getSuggestionsCount() > 0);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        schedulePrewarm();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelPrewarm();
+        if (mSuggestionsUpdateScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mSuggestionsUpdate);
+            mSuggestionsUpdateScheduled = false;
+        }
+        if (mQueryDispatcher != null) mQueryDispatcher.cancel();
+        // jump to the final state, running the end actions
+        if (mBackgroundAnimator.isStarted()) mBackgroundAnimator.end();
+        if (mSuggestionsAnimator.isStarted()) mSuggestionsAnimator.end();
+    }
+
     @NonNull
     private Activity getActivity() {
         Context context = getContext();
@@ -430,4 +756,16 @@ public class FloatingSearchView extends RelativeLayout {
         throw new IllegalStateException();
     }
 
+    private static final class PrewarmThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "fsv-prewarm-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.mypopsy.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Turns text changes into {@link SuggestionsProvider} requests.
+ *
+ * The debounce window of each query is chosen by a {@link DebouncePolicy}.
+ */
+class QueryDispatcher implements TextWatcher {
+
+    static final int DEFAULT_MIN_LENGTH = 1;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final SuggestionsProvider mProvider;
+
+    private DebouncePolicy mPolicy;
+    private int mMinLength = DEFAULT_MIN_LENGTH;
+
+    private String mPendingQuery;
+    private String mLastQuery;
+    private SuggestionsProvider.Request mRequest;
+
+    private final Runnable mDispatch = this::dispatch;
+
+    QueryDispatcher(@NonNull SuggestionsProvider provider, @NonNull DebouncePolicy policy) {
+        mProvider = provider;
+        mPolicy = policy;
+    }
+
+    void setDebouncePolicy(@NonNull DebouncePolicy policy) {
+        mPolicy = policy;
+    }
+
+    void setMinLength(int minLength) {
+        if (minLength < 0) throw new IllegalArgumentException("invalid minimum length");
+        mMinLength = minLength;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        onQueryChanged(s.toString());
+    }
+
+    void onQueryChanged(@NonNull String text) {
+        final String query = text.trim();
+        mPolicy.onKeystroke(SystemClock.uptimeMillis());
+        mHandler.removeCallbacks(mDispatch);
+
+        if (query.length() < mMinLength) {
+            mPendingQuery = null;
+            cancelRequest();
+            if (mLastQuery != null) {
+                mLastQuery = null;
+                mProvider.onSuggestionsCleared();
+            }
+            return;
+        }
+
+        mPendingQuery = query;
+        mHandler.postDelayed(mDispatch, mPolicy.getDebounce(query));
+    }
+
+    private void dispatch() {
+        final String query = mPendingQuery;
+        mPendingQuery = null;
+        if (query == null || query.equals(mLastQuery)) return;
+        cancelRequest();
+        mLastQuery = query;
+        mRequest = new SuggestionsProvider.Request(query);
+        mProvider.onSuggestionsRequested(mRequest);
+    }
+
+    private void cancelRequest() {
+        if (mRequest == null) return;
+        mRequest.cancel();
+        mRequest = null;
+    }
+
+    /**
+     * Cancels any pending or in-flight request.
+     */
+    void cancel() {
+        mHandler.removeCallbacks(mDispatch);
+        mPendingQuery = null;
+        mLastQuery = null;
+        cancelRequest();
+    }
+}
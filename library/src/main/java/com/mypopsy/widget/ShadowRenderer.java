@@ -0,0 +1,29 @@
+package com.mypopsy.widget;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mypopsy.widget.internal.RoundRectDrawableWithShadow;
+import com.mypopsy.widget.internal.SuggestionItemDecorator;
+
+/**
+ * Strategy rendering the shadows of the search bar and of the suggestion cards.
+ *
+ * @see SoftwareShadowRenderer
+ * @see ElevationShadowRenderer
+ */
+public interface ShadowRenderer {
+
+    /**
+     * Installs this renderer on the search bar and on the suggestions list.
+     */
+    void install(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                 RecyclerView suggestions, SuggestionItemDecorator decorator);
+
+    /**
+     * Reverts anything done by {@link #install}.
+     */
+    void uninstall(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                   RecyclerView suggestions, SuggestionItemDecorator decorator);
+}
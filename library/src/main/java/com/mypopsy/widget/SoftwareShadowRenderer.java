@@ -0,0 +1,28 @@
+package com.mypopsy.widget;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mypopsy.widget.internal.RoundRectDrawableWithShadow;
+import com.mypopsy.widget.internal.SuggestionItemDecorator;
+
+/**
+ * Draws shadows on the UI thread using {@link RoundRectDrawableWithShadow}.
+ */
+public class SoftwareShadowRenderer implements ShadowRenderer {
+
+    @Override
+    public void install(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                        RecyclerView suggestions, SuggestionItemDecorator decorator) {
+        searchBackground.setDrawShadow(true);
+        decorator.setDrawShadow(true);
+        suggestions.invalidateItemDecorations();
+    }
+
+    @Override
+    public void uninstall(View searchBar, RoundRectDrawableWithShadow searchBackground,
+                          RecyclerView suggestions, SuggestionItemDecorator decorator) {
+        // nothing to do
+    }
+}
@@ -0,0 +1,69 @@
+package com.mypopsy.widget;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Provides suggestions for the queries typed into a {@link FloatingSearchView}.
+ *
+ * Queries are debounced, filtered by length and de-duplicated before reaching the provider,
+ * and superseded requests are automatically cancelled.
+ *
+ * @see FloatingSearchView#setSuggestionsProvider(SuggestionsProvider)
+ */
+public interface SuggestionsProvider {
+
+    /**
+     * Called once the query settled. Results must only be published while the request
+     * has not been cancelled.
+     */
+    @MainThread
+    void onSuggestionsRequested(@NonNull Request request);
+
+    /**
+     * Called when the query became shorter than the minimum length: current suggestions
+     * should be cleared.
+     */
+    @MainThread
+    void onSuggestionsCleared();
+
+    interface OnCancelListener {
+        @MainThread void onCancel(@NonNull Request request);
+    }
+
+    final class Request {
+
+        private final String mQuery;
+        private boolean mCanceled;
+        private OnCancelListener mCancelListener;
+
+        Request(@NonNull String query) {
+            mQuery = query;
+        }
+
+        @NonNull
+        public String getQuery() {
+            return mQuery;
+        }
+
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        /**
+         * Sets a listener invoked when this request gets superseded, e.g. to abort
+         * an in-flight network call. Invoked immediately if already cancelled.
+         */
+        public void setOnCancelListener(@Nullable OnCancelListener listener) {
+            mCancelListener = listener;
+            if (mCanceled && listener != null) listener.onCancel(this);
+        }
+
+        void cancel() {
+            if (mCanceled) return;
+            mCanceled = true;
+            if (mCancelListener != null) mCancelListener.onCancel(this);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.mypopsy.widget.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lays out the text of suggestion rows off the main thread.
+ *
+ * The text is measured on a worker pool with the parameters of the target {@link TextView}
+ * ({@link PrecomputedTextCompat}), so that the main thread only attaches ready layouts. Results
+ * are cached: rebinding a row, or binding a prefetched text, costs no measurement at all.
+ */
+public final class SuggestionTextLayout {
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(2, new ThreadFactory());
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // precomputed texts by (text, params), only accessed from the main thread
+    private static final LruCache<Key, PrecomputedTextCompat> sCache = new LruCache<>(CACHE_SIZE);
+    // computations in progress, shared by binds and prefetches, only accessed from the main thread
+    private static final Map<Key, Future<PrecomputedTextCompat>> sPending = new HashMap<>();
+
+    private SuggestionTextLayout() {}
+
+    /**
+     * Sets the text of the given view, laid out in the background when possible.
+     *
+     * An {@link AppCompatTextView} (as inflated by AppCompat activities) gets the text when it is
+     * measured, once computed: when RecyclerView prefetches rows, or when the text was
+     * {@link #prefetch prefetched}, it is usually ready by then. Other views are set synchronously,
+     * and so is the plain text when the layout could not be computed.
+     */
+    @MainThread
+    public static void setText(@NonNull TextView view, @Nullable CharSequence text) {
+        final AppCompatTextView appCompatView =
+                view instanceof AppCompatTextView ? (AppCompatTextView) view : null;
+        if (appCompatView != null) {
+            // a pending future of a previous bind would override the text when measured
+            appCompatView.setTextFuture(null);
+        }
+        if (TextUtils.isEmpty(text)) {
+            view.setText(text);
+            return;
+        }
+        final Key key = new Key(text, TextViewCompat.getTextMetricsParams(view));
+        final PrecomputedTextCompat cached = sCache.get(key);
+        if (cached != null) {
+            TextViewCompat.setPrecomputedText(view, cached);
+        } else if (appCompatView != null) {
+            appCompatView.setTextFuture(new FallbackFuture(appCompatView, key, precompute(key)));
+        } else {
+            view.setText(text);
+        }
+    }
+
+    /**
+     * Lays out the given texts in the background for views like the given one, so that they
+     * are ready to be attached when bound.
+     */
+    @MainThread
+    public static void prefetch(@NonNull TextView view, @Nullable CharSequence... texts) {
+        if (texts == null) return;
+        final PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(view);
+        for (CharSequence text : texts) {
+            if (TextUtils.isEmpty(text)) continue;
+            final Key key = new Key(text, params);
+            if (sCache.get(key) == null) precompute(key);
+        }
+    }
+
+    /**
+     * Returns the pool computing the layouts.
+     */
+    public static Executor getExecutor() {
+        return sExecutor;
+    }
+
+    /**
+     * Clears the cached layouts, e.g. on memory pressure.
+     */
+    @MainThread
+    public static void clearCache() {
+        sCache.evictAll();
+    }
+
+    /**
+     * Returns the computation of the given layout, reusing the one in progress if any.
+     */
+    @MainThread
+    private static Future<PrecomputedTextCompat> precompute(final Key key) {
+        final Future<PrecomputedTextCompat> pending = sPending.get(key);
+        if (pending != null) return pending;
+        final FutureTask<PrecomputedTextCompat> task = new FutureTask<PrecomputedTextCompat>(
+                (Callable<PrecomputedTextCompat>) () -> PrecomputedTextCompat.create(key.text, key.params)) {
+            @Override
+            protected void done() {
+                PrecomputedTextCompat result = null;
+                try {
+                    if (!isCancelled()) result = get();
+                } catch (Exception ignored) {
+                    // binds fall back to the plain text, see FallbackFuture
+                }
+                final PrecomputedTextCompat computed = result;
+                // the cache is confined to the main thread
+                sMainHandler.post(() -> {
+                    sPending.remove(key);
+                    if (computed != null) sCache.put(key, computed);
+                });
+            }
+        };
+        sPending.put(key, task);
+        sExecutor.execute(task);
+        return task;
+    }
+
+    private static final class Key {
+        final CharSequence text;
+        final PrecomputedTextCompat.Params params;
+
+        Key(CharSequence text, PrecomputedTextCompat.Params params) {
+            this.text = text;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return text.equals(key.text) && params.equals(key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + params.hashCode();
+        }
+    }
+
+    /**
+     * The future handed to a view, setting the plain text when the layout failed.
+     *
+     * The view consumes it when measured, on the main thread: the text is set there and the
+     * failure rethrown as an {@link ExecutionException}, which the view ignores, so that the row
+     * shows its text (laid out by the measure in progress) rather than the one it was bound with
+     * before being recycled.
+     */
+    private static final class FallbackFuture implements Future<PrecomputedTextCompat> {
+
+        private final TextView mView;
+        private final Key mKey;
+        private final Future<PrecomputedTextCompat> mComputation;
+
+        FallbackFuture(TextView view, Key key, Future<PrecomputedTextCompat> computation) {
+            mView = view;
+            mKey = key;
+            mComputation = computation;
+        }
+
+        @Override
+        public PrecomputedTextCompat get() throws InterruptedException, ExecutionException {
+            try {
+                return mComputation.get();
+            } catch (ExecutionException | CancellationException e) {
+                throw fallback(e);
+            }
+        }
+
+        @Override
+        public PrecomputedTextCompat get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return mComputation.get(timeout, unit);
+            } catch (ExecutionException | CancellationException e) {
+                throw fallback(e);
+            }
+        }
+
+        private ExecutionException fallback(Exception e) {
+            mView.setText(mKey.text);
+            return e instanceof ExecutionException ? (ExecutionException) e : new ExecutionException(e);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // the computation is shared with other binds and prefetches
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mComputation.isDone();
+        }
+    }
+
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "fsv-text-layout-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -15,10 +15,12 @@
  */
 package com.mypopsy.widget.internal;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.LinearGradient;
+import android.graphics.Outline;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PixelFormat;
@@ -72,6 +74,8 @@ public class RoundRectDrawableWithShadow extends Drawable {
 
     Paint mBoundsPaint;
 
+    Paint mShadowBitmapPaint;
+
     final RectF mCardBounds;
 
     float mCornerRadius;
@@ -93,8 +97,29 @@ public class RoundRectDrawableWithShadow extends Drawable {
     boolean topLeftCorner, bottomLeftCorner, topRightCorner, bottomRightCorner;
     boolean leftShadow, topShadow, rightShadow, bottomShadow;
 
+    @Gravity int mShadowFlags;
+
     private boolean mDirty = true;
 
+    private boolean mShadowCacheEnabled;
+
+    private boolean mDrawShadow = true;
+
+    private final Rect mOutlineRect = new Rect();
+
+    private boolean mShadowCornersDirty = true;
+
+    private ShadowBitmapCache.Key mShadowKey;
+
+    private int mBuildCount;
+
+    private final int[] mSrcSlicesX = new int[4];
+    private final int[] mSrcSlicesY = new int[4];
+    private final float[] mDstSlicesX = new float[4];
+    private final float[] mDstSlicesY = new float[4];
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+
     private boolean mAddPaddingForCorners = true;
 
     /**
@@ -115,6 +140,8 @@ public class RoundRectDrawableWithShadow extends Drawable {
         mCardBounds = new RectF();
         mEdgeShadowPaint = new Paint(mCornerShadowPaint);
         mEdgeShadowPaint.setAntiAlias(false);
+        mShadowBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mShadowBitmapPaint.setColor(Color.BLACK);
         if(DEBUG) {
             mBoundsPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
             mBoundsPaint.setColor(Color.BLACK);
@@ -133,6 +160,9 @@ public class RoundRectDrawableWithShadow extends Drawable {
     }
 
     public void setShadow(@Gravity int flags) {
+        // unchanged flags must not trigger a rebuild, as pooled drawables rely on it
+        if (flags == mShadowFlags) return;
+        mShadowFlags = flags;
         topLeftCorner = (flags & (TOP|LEFT)) == (LEFT|TOP);
         bottomLeftCorner = (flags & (BOTTOM|LEFT)) == (LEFT|BOTTOM);
         topRightCorner = (flags & (TOP|RIGHT)) == (TOP|RIGHT);
@@ -148,9 +178,42 @@ public class RoundRectDrawableWithShadow extends Drawable {
 
     @Override
     public RoundRectDrawableWithShadow mutate() {
-        return new RoundRectDrawableWithShadow(
+        RoundRectDrawableWithShadow drawable = new RoundRectDrawableWithShadow(
                 mPaint.getColor(), getCornerRadius(),
                 getShadowSize(), getMaxShadowSize());
+        drawable.setShadowCacheEnabled(mShadowCacheEnabled);
+        drawable.setDrawShadow(mDrawShadow);
+        return drawable;
+    }
+
+    /**
+     * Controls whether the shadow is drawn. Padding is reported either way, so that
+     * the shadow can be rendered by the view elevation from {@link #getOutline(Outline)}.
+     */
+    public void setDrawShadow(boolean drawShadow) {
+        if (mDrawShadow == drawShadow) return;
+        mDrawShadow = drawShadow;
+        invalidateSelf();
+    }
+
+    public boolean getDrawShadow() {
+        return mDrawShadow;
+    }
+
+    /**
+     * When enabled, the shadow is rasterized once into a small bitmap (shared process-wide
+     * for identical radius, shadow size and shadow flags) and drawn as stretched slices,
+     * instead of being rendered with gradient shaders on every frame.
+     */
+    public void setShadowCacheEnabled(boolean enabled) {
+        if (mShadowCacheEnabled == enabled) return;
+        mShadowCacheEnabled = enabled;
+        mDirty = true;
+        invalidateSelf();
+    }
+
+    public boolean isShadowCacheEnabled() {
+        return mShadowCacheEnabled;
     }
 
     /**
@@ -178,6 +241,12 @@ public class RoundRectDrawableWithShadow extends Drawable {
         mPaint.setAlpha(alpha);
         mCornerShadowPaint.setAlpha(alpha);
         mEdgeShadowPaint.setAlpha(alpha);
+        mShadowBitmapPaint.setAlpha(alpha);
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
     }
 
     @Override
@@ -208,6 +277,7 @@ public class RoundRectDrawableWithShadow extends Drawable {
         mShadowSize = (int)(shadowSize * SHADOW_MULTIPLIER + mInsetShadow + .5f);
         mMaxShadowSize = maxShadowSize + mInsetShadow;
         mDirty = true;
+        mShadowCornersDirty = true;
         invalidateSelf();
     }
 
@@ -248,6 +318,7 @@ public class RoundRectDrawableWithShadow extends Drawable {
         mPaint.setColorFilter(cf);
         mCornerShadowPaint.setColorFilter(cf);
         mEdgeShadowPaint.setColorFilter(cf);
+        mShadowBitmapPaint.setColorFilter(cf);
     }
 
     @Override
@@ -262,6 +333,7 @@ public class RoundRectDrawableWithShadow extends Drawable {
         }
         mCornerRadius = radius;
         mDirty = true;
+        mShadowCornersDirty = true;
         invalidateSelf();
     }
 
@@ -272,9 +344,14 @@ public class RoundRectDrawableWithShadow extends Drawable {
             mDirty = false;
         }
 
-        canvas.translate(0, mRawShadowSize / 2);
-        drawShadow(canvas);
-        canvas.translate(0, -mRawShadowSize / 2);
+        if (mDrawShadow) {
+            canvas.translate(0, mRawShadowSize / 2);
+            if (!mShadowCacheEnabled || !drawCachedShadow(canvas)) {
+                if (mShadowCornersDirty) buildShadowCorners();
+                drawShadow(canvas, mCardBounds, mCornerShadowPaint, mEdgeShadowPaint);
+            }
+            canvas.translate(0, -mRawShadowSize / 2);
+        }
         drawBody(canvas, mCardBounds, mCornerRadius, mPaint);
 
         if(DEBUG) {
@@ -283,24 +360,126 @@ public class RoundRectDrawableWithShadow extends Drawable {
         }
     }
 
-    private void drawShadow(Canvas canvas) {
+    /**
+     * Outlines the card. Sides without shadow are pushed out by the corner radius, so
+     * that their corners are square and their shadow lies underneath the adjacent content.
+     * An outline cannot be clipped per side: the shadow is still cast there, and only
+     * hidden by whatever covers or clips it.
+     */
+    @Override
+    public void getOutline(@NonNull Outline outline) {
+        if (mDirty) {
+            buildComponents(getBounds());
+            mDirty = false;
+        }
+        final int extent = (int) Math.ceil(mCornerRadius);
+        mOutlineRect.set(
+                (int) mCardBounds.left - (leftShadow ? 0 : extent),
+                (int) mCardBounds.top - (topShadow ? 0 : extent),
+                (int) Math.ceil(mCardBounds.right) + (rightShadow ? 0 : extent),
+                (int) Math.ceil(mCardBounds.bottom) + (bottomShadow ? 0 : extent));
+        outline.setRoundRect(mOutlineRect, mCornerRadius);
+        outline.setAlpha(mPaint.getAlpha() / 255f);
+    }
+
+    /**
+     * Draws the shadow from a cached nine-patch style bitmap.
+     *
+     * @return false if the card is too small to be drawn from slices.
+     */
+    private boolean drawCachedShadow(Canvas canvas) {
+        final float inset = mCornerRadius + mInsetShadow + mRawShadowSize / 2;
+        // size of the fixed slices, measured from the card edges
+        final int slice = (int) Math.ceil(inset + mShadowSize);
+        // how far the shadow can spread outside of the card
+        final int spread = (int) Math.ceil(mShadowSize + mRawShadowSize) + mInsetShadow;
+
+        if (mCardBounds.width() < 2 * slice + 1 || mCardBounds.height() < 2 * slice + 1)
+            return false;
+
+        Bitmap bitmap = ShadowBitmapCache.get(mShadowKey);
+        if (bitmap == null) {
+            bitmap = buildShadowBitmap(slice, spread);
+            ShadowBitmapCache.put(mShadowKey, bitmap);
+        }
+
+        setSlices(mSrcSlicesX, 0, spread + slice, spread + slice + 1, bitmap.getWidth());
+        setSlices(mSrcSlicesY, 0, spread + slice, spread + slice + 1, bitmap.getHeight());
+        setSlices(mDstSlicesX, mCardBounds.left - spread, mCardBounds.left + slice,
+                mCardBounds.right - slice, mCardBounds.right + spread);
+        setSlices(mDstSlicesY, mCardBounds.top - spread, mCardBounds.top + slice,
+                mCardBounds.bottom - slice, mCardBounds.bottom + spread);
+
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                // the center slice lies inside the card and is always empty
+                if (row == 1 && col == 1) continue;
+                mSrcRect.set(mSrcSlicesX[col], mSrcSlicesY[row],
+                        mSrcSlicesX[col + 1], mSrcSlicesY[row + 1]);
+                mDstRect.set(mDstSlicesX[col], mDstSlicesY[row],
+                        mDstSlicesX[col + 1], mDstSlicesY[row + 1]);
+                canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mShadowBitmapPaint);
+            }
+        }
+        return true;
+    }
+
+    private static void setSlices(int[] slices, int s0, int s1, int s2, int s3) {
+        slices[0] = s0;
+        slices[1] = s1;
+        slices[2] = s2;
+        slices[3] = s3;
+    }
+
+    private static void setSlices(float[] slices, float s0, float s1, float s2, float s3) {
+        slices[0] = s0;
+        slices[1] = s1;
+        slices[2] = s2;
+        slices[3] = s3;
+    }
+
+    private Bitmap buildShadowBitmap(int slice, int spread) {
+        if(DEBUG) Log.d(getClass().getSimpleName(), "buildShadowBitmap("+slice+","+spread+")");
+
+        // smallest card whose shadow still has a uniform, stretchable center
+        final int cardSize = 2 * slice + 1;
+        final int size = cardSize + 2 * spread;
+        final Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+        final Canvas canvas = new Canvas(bitmap);
+
+        if (mShadowCornersDirty) buildShadowCorners();
+        // rasterize fully opaque and unfiltered: alpha and color filter are applied when blitting
+        final Paint cornerPaint = new Paint(mCornerShadowPaint);
+        cornerPaint.setAlpha(255);
+        cornerPaint.setColorFilter(null);
+        final Paint edgePaint = new Paint(mEdgeShadowPaint);
+        edgePaint.setAlpha(255);
+        edgePaint.setColorFilter(null);
+
+        drawShadow(canvas, new RectF(spread, spread, spread + cardSize, spread + cardSize),
+                cornerPaint, edgePaint);
+        return bitmap;
+    }
+
+    private void drawShadow(Canvas canvas, RectF cardBounds, Paint cornerShadowPaint,
+                            Paint edgeShadowPaint) {
         final float edgeShadowTop = -mCornerRadius - mShadowSize;
         final float inset = mCornerRadius + mInsetShadow + mRawShadowSize / 2;
-        final boolean drawHorizontalEdges = mCardBounds.width() - 2 * inset > 0;
-        final boolean drawVerticalEdges = mCardBounds.height() - 2 * inset > 0;
+        final boolean drawHorizontalEdges = cardBounds.width() - 2 * inset > 0;
+        final boolean drawVerticalEdges = cardBounds.height() - 2 * inset > 0;
         int saved;
 
         // LT
         if(topLeftCorner || topShadow) {
             saved = canvas.save();
-            canvas.translate(mCardBounds.left + inset, mCardBounds.top + inset);
-            if (topLeftCorner) canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+            canvas.translate(cardBounds.left + inset, cardBounds.top + inset);
+            if (topLeftCorner) canvas.drawPath(mCornerShadowPath, cornerShadowPaint);
             if (drawHorizontalEdges && topShadow) {
                 canvas.drawRect(topLeftCorner ? 0 : -inset,
                         edgeShadowTop,
-                        mCardBounds.width() - (topRightCorner ?  2 * inset : 0),
+                        cardBounds.width() - (topRightCorner ?  2 * inset : 0),
                         -mCornerRadius,
-                        mEdgeShadowPaint);
+                        edgeShadowPaint);
             }
             canvas.restoreToCount(saved);
         }
@@ -308,14 +487,14 @@ public class RoundRectDrawableWithShadow extends Drawable {
         // RB
         if(bottomRightCorner || bottomShadow) {
             saved = canvas.save();
-            canvas.translate(mCardBounds.right - inset, mCardBounds.bottom - inset);
+            canvas.translate(cardBounds.right - inset, cardBounds.bottom - inset);
             canvas.rotate(180f);
-            if (bottomRightCorner) canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+            if (bottomRightCorner) canvas.drawPath(mCornerShadowPath, cornerShadowPaint);
             if (drawHorizontalEdges && bottomShadow) {
                 canvas.drawRect(bottomLeftCorner ? 0 : -inset, edgeShadowTop,
-                        mCardBounds.width() - (bottomRightCorner ? 2*inset : 0),
+                        cardBounds.width() - (bottomRightCorner ? 2*inset : 0),
                         -mCornerRadius + mShadowSize,
-                        mEdgeShadowPaint);
+                        edgeShadowPaint);
             }
             canvas.restoreToCount(saved);
         }
@@ -323,15 +502,15 @@ public class RoundRectDrawableWithShadow extends Drawable {
         // LB
         if(bottomLeftCorner || leftShadow) {
             saved = canvas.save();
-            canvas.translate(mCardBounds.left + inset, mCardBounds.bottom - inset);
+            canvas.translate(cardBounds.left + inset, cardBounds.bottom - inset);
             canvas.rotate(270f);
-            if (bottomLeftCorner) canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+            if (bottomLeftCorner) canvas.drawPath(mCornerShadowPath, cornerShadowPaint);
             if (drawVerticalEdges && leftShadow) {
                 canvas.drawRect(bottomLeftCorner ? 0 : -(inset-mInsetShadow),
                         edgeShadowTop,
-                        mCardBounds.height() - (topLeftCorner ? 2*inset : inset-mInsetShadow),
+                        cardBounds.height() - (topLeftCorner ? 2*inset : inset-mInsetShadow),
                         -mCornerRadius,
-                        mEdgeShadowPaint);
+                        edgeShadowPaint);
             }
             canvas.restoreToCount(saved);
         }
@@ -339,15 +518,15 @@ public class RoundRectDrawableWithShadow extends Drawable {
         // RT
         if(topRightCorner || rightShadow) {
             saved = canvas.save();
-            canvas.translate(mCardBounds.right - inset, mCardBounds.top + inset);
+            canvas.translate(cardBounds.right - inset, cardBounds.top + inset);
             canvas.rotate(90f);
-            if (topRightCorner) canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+            if (topRightCorner) canvas.drawPath(mCornerShadowPath, cornerShadowPaint);
             if (drawVerticalEdges && rightShadow) {
                 canvas.drawRect(topRightCorner ? 0 : -(inset+mInsetShadow),
                         edgeShadowTop,
-                        mCardBounds.height() - (bottomRightCorner ? 2*inset : inset+mInsetShadow),
+                        cardBounds.height() - (bottomRightCorner ? 2*inset : inset+mInsetShadow),
                         -mCornerRadius,
-                        mEdgeShadowPaint);
+                        edgeShadowPaint);
             }
             canvas.restoreToCount(saved);
         }
@@ -438,9 +617,11 @@ public class RoundRectDrawableWithShadow extends Drawable {
                 new int[]{SHADOW_COLOR_START, SHADOW_COLOR_START, SHADOW_COLOR_END},
                 new float[]{0f, .5f, 1f}, Shader.TileMode.CLAMP));
         mEdgeShadowPaint.setAntiAlias(false);
+        mShadowCornersDirty = false;
     }
 
     private void buildComponents(Rect bounds) {
+        mBuildCount++;
         // Card is offset SHADOW_MULTIPLIER * maxShadowSize to account for the shadow shift.
         // We could have different top-bottom offsets to avoid extra gap above but in that case
         // center aligning Views inside the CardView would be problematic.
@@ -450,7 +631,20 @@ public class RoundRectDrawableWithShadow extends Drawable {
                 bounds.top + (topShadow ? verticalOffset : 0),
                 bounds.right - (rightShadow ? mRawMaxShadowSize : 0),
                 bounds.bottom - (bottomShadow ? verticalOffset : 0));
-        buildShadowCorners();
+        // shaders only depend on the corner radius and shadow size, and with the
+        // shadow cache they are only needed when a bitmap has to be rasterized
+        if (mShadowCacheEnabled)
+            mShadowKey = new ShadowBitmapCache.Key(mCornerRadius, mShadowSize,
+                    mRawShadowSize, mInsetShadow, mShadowFlags);
+        else if (mShadowCornersDirty)
+            buildShadowCorners();
+    }
+
+    /**
+     * Returns how many times the drawing components have been rebuilt so far.
+     */
+    public int getBuildCount() {
+        return mBuildCount;
     }
 
     public float getCornerRadius() {
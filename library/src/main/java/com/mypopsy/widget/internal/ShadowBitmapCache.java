@@ -0,0 +1,72 @@
+package com.mypopsy.widget.internal;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Process-wide LRU cache of pre-rendered shadow bitmaps, shared across all
+ * {@link RoundRectDrawableWithShadow} instances.
+ */
+final class ShadowBitmapCache {
+
+    private static final int MAX_SIZE_BYTES = 512 * 1024;
+
+    private static final LruCache<Key, Bitmap> sCache = new LruCache<Key, Bitmap>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private ShadowBitmapCache() {}
+
+    static Bitmap get(Key key) {
+        return sCache.get(key);
+    }
+
+    static void put(Key key, Bitmap bitmap) {
+        sCache.put(key, bitmap);
+    }
+
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    static final class Key {
+        final float cornerRadius;
+        final float shadowSize;
+        final float rawShadowSize;
+        final int insetShadow;
+        final int flags;
+
+        Key(float cornerRadius, float shadowSize, float rawShadowSize, int insetShadow, int flags) {
+            this.cornerRadius = cornerRadius;
+            this.shadowSize = shadowSize;
+            this.rawShadowSize = rawShadowSize;
+            this.insetShadow = insetShadow;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return cornerRadius == key.cornerRadius
+                    && shadowSize == key.shadowSize
+                    && rawShadowSize == key.rawShadowSize
+                    && insetShadow == key.insetShadow
+                    && flags == key.flags;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(cornerRadius);
+            result = 31 * result + Float.floatToIntBits(shadowSize);
+            result = 31 * result + Float.floatToIntBits(rawShadowSize);
+            result = 31 * result + insetShadow;
+            result = 31 * result + flags;
+            return result;
+        }
+    }
+}
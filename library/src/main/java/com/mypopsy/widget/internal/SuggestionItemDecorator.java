@@ -5,17 +5,47 @@ import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.LEFT;
 import static com.mypopsy.widget.internal.RoundRectDrawableWithShadow.RIGHT;
 
 import android.graphics.Canvas;
+import android.graphics.Outline;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.Trace;
 import android.view.View;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class SuggestionItemDecorator extends RecyclerView.ItemDecoration {
 
+    private static final String TRACE_REBUILDS = "fsv:suggestionShadowRebuilds";
+    private static final int MAX_POOL_SIZE = 8;
+
+    // template holding the shared configuration, never drawn
     private final RoundRectDrawableWithShadow drawable;
 
+    // pre-configured drawables keyed by (shadow flags, height), in access order
+    private final Map<Long, RoundRectDrawableWithShadow> pool =
+            new LinkedHashMap<Long, RoundRectDrawableWithShadow>(MAX_POOL_SIZE, .75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, RoundRectDrawableWithShadow> eldest) {
+                    return size() > MAX_POOL_SIZE;
+                }
+            };
+
+    // drawable used to draw all the rows at once, lazily created
+    private RoundRectDrawableWithShadow card;
+
+    private int cardLeft, cardTop;
+
+    private boolean continuousCard;
+
+    private boolean drawShadow = true;
+
+    private int lastFrameRebuilds;
+
     public SuggestionItemDecorator(RoundRectDrawableWithShadow drawable) {
         this.drawable = drawable;
     }
@@ -26,16 +56,25 @@ public class SuggestionItemDecorator extends RecyclerView.ItemDecoration {
         int count = state.getItemCount();
         int shadows = LEFT|RIGHT;
         if(position == count - 1) shadows|=BOTTOM;
+        // padding only depends on the shadow flags: the template is never drawn, hence never rebuilt
         drawable.setShadow(shadows);
         drawable.getPadding(rect);
     }
 
     @Override
     public void onDraw(@NonNull Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        if (continuousCard || !drawShadow)
+            drawContinuousCard(canvas, parent, state);
+        else
+            drawCards(canvas, parent, state);
+    }
+
+    private void drawCards(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
         int visibleCount = parent.getChildCount();
         int count = state.getItemCount();
         RecyclerView.Adapter<? extends RecyclerView.ViewHolder> adapter = (RecyclerView.Adapter<? extends RecyclerView.ViewHolder>) parent.getAdapter();
         int adapterCount = adapter != null ? adapter.getItemCount() : 0;
+        int rebuilds = 0;
 
         for (int i = 0; i < visibleCount; i++) {
             View view = parent.getChildAt(i);
@@ -48,22 +87,179 @@ public class SuggestionItemDecorator extends RecyclerView.ItemDecoration {
             int shadows = LEFT|RIGHT;
             if(position == count - 1 && adapterCount != 0) shadows|=BOTTOM;
 
-            drawable.setAlpha((int) (255*alpha));
-            drawable.setShadow(shadows);
-            drawable.setBounds(0, 0, parent.getWidth(), view.getHeight());
+            RoundRectDrawableWithShadow d = obtain(shadows, view.getHeight());
+            // no-op unless the parent width changed
+            d.setBounds(0, 0, parent.getWidth(), view.getHeight());
+            d.setAlpha((int) (255*alpha));
+            int builds = d.getBuildCount();
             int saved = canvas.save();
                 canvas.translate(parent.getPaddingLeft() + translationX,
                                 view.getTop() + params.topMargin + translationY);
-                drawable.draw(canvas);
+                d.draw(canvas);
             canvas.restoreToCount(saved);
+            rebuilds += d.getBuildCount() - builds;
         }
+
+        lastFrameRebuilds = rebuilds;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.setCounter(TRACE_REBUILDS, rebuilds);
+    }
+
+    /**
+     * Draws a single card spanning the union of the visible rows, instead of one card per row.
+     */
+    private void drawContinuousCard(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+        if (!updateContinuousCard(parent, state.getItemCount())) {
+            lastFrameRebuilds = 0;
+            return;
+        }
+
+        int builds = card.getBuildCount();
+        int saved = canvas.save();
+            canvas.translate(cardLeft, cardTop);
+            card.draw(canvas);
+        canvas.restoreToCount(saved);
+
+        lastFrameRebuilds = card.getBuildCount() - builds;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.setCounter(TRACE_REBUILDS, lastFrameRebuilds);
+    }
+
+    /**
+     * Configures {@link #card} to span the union of the visible rows.
+     *
+     * @return false if there is nothing to draw.
+     */
+    private boolean updateContinuousCard(RecyclerView parent, int count) {
+        int visibleCount = parent.getChildCount();
+        RecyclerView.Adapter<? extends RecyclerView.ViewHolder> adapter = (RecyclerView.Adapter<? extends RecyclerView.ViewHolder>) parent.getAdapter();
+        int adapterCount = adapter != null ? adapter.getItemCount() : 0;
+
+        float left = Float.MAX_VALUE, right = -Float.MAX_VALUE;
+        float top = Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        float alpha = 0;
+        int shadows = LEFT|RIGHT;
+
+        for (int i = 0; i < visibleCount; i++) {
+            View view = parent.getChildAt(i);
+            // fully transparent rows (e.g. not yet faded in) don't contribute to the card
+            if (view.getAlpha() <= 0) continue;
+            int position = parent.getChildAdapterPosition(view);
+            float translationX = view.getTranslationX();
+            float translationY = view.getTranslationY();
+            RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) view.getLayoutParams();
+            float rowTop = view.getTop() + params.topMargin + translationY;
+
+            left = Math.min(left, translationX);
+            right = Math.max(right, translationX);
+            top = Math.min(top, rowTop);
+            bottom = Math.max(bottom, rowTop + view.getHeight());
+            alpha = Math.max(alpha, view.getAlpha());
+            if(position == count - 1 && adapterCount != 0) shadows|=BOTTOM;
+        }
+
+        if (alpha <= 0) return false;
+
+        if (card == null) card = drawable.mutate();
+        card.setShadow(shadows);
+        card.setBounds(0, 0, (int) (parent.getWidth() + right - left + .5f), (int) (bottom - top + .5f));
+        card.setAlpha((int) (255*Math.min(1, alpha)));
+        cardLeft = (int) (parent.getPaddingLeft() + left + .5f);
+        cardTop = (int) (top + .5f);
+        return true;
+    }
+
+    /**
+     * Retrieves the bounds of the continuous card of the given list, in the list coordinates.
+     *
+     * @return the card alpha, or 0 if there is no visible card.
+     */
+    public float getContinuousCardBounds(RecyclerView parent, Rect out) {
+        RecyclerView.Adapter<? extends RecyclerView.ViewHolder> adapter = (RecyclerView.Adapter<? extends RecyclerView.ViewHolder>) parent.getAdapter();
+        if (!updateContinuousCard(parent, adapter != null ? adapter.getItemCount() : 0)) {
+            out.setEmpty();
+            return 0;
+        }
+        out.set(card.getBounds());
+        out.offset(cardLeft, cardTop);
+        return card.getAlpha() / 255f;
+    }
+
+    /**
+     * Outlines the continuous card of the given list, in the list coordinates.
+     *
+     * @return false if there is no visible card to outline.
+     */
+    public boolean getContinuousCardOutline(RecyclerView parent, Outline outline) {
+        RecyclerView.Adapter<? extends RecyclerView.ViewHolder> adapter = (RecyclerView.Adapter<? extends RecyclerView.ViewHolder>) parent.getAdapter();
+        if (!updateContinuousCard(parent, adapter != null ? adapter.getItemCount() : 0))
+            return false;
+        card.getOutline(outline);
+        outline.offset(cardLeft, cardTop);
+        return true;
+    }
+
+    private RoundRectDrawableWithShadow obtain(int shadows, int height) {
+        long key = ((long) shadows << 32) | (height & 0xffffffffL);
+        RoundRectDrawableWithShadow d = pool.get(key);
+        if (d == null) {
+            d = drawable.mutate();
+            d.setShadow(shadows);
+            pool.put(key, d);
+        }
+        return d;
+    }
+
+    /**
+     * Returns how many drawable rebuilds happened during the last {@link #onDraw} pass.
+     */
+    public int getLastFrameRebuildCount() {
+        return lastFrameRebuilds;
+    }
+
+    /**
+     * When enabled, one continuous card spanning all the visible rows is drawn in a single
+     * pass, instead of one card per row.
+     */
+    public void setContinuousCard(boolean enabled) {
+        continuousCard = enabled;
+    }
+
+    public boolean isContinuousCard() {
+        return continuousCard;
+    }
+
+    /**
+     * Controls whether the shadow of the suggestion cards is drawn. Without shadow, rows are
+     * always drawn as one continuous card so that it can be outlined,
+     * see {@link #getContinuousCardOutline(RecyclerView, Outline)}.
+     */
+    public void setDrawShadow(boolean drawShadow) {
+        this.drawShadow = drawShadow;
+        drawable.setDrawShadow(drawShadow);
+        pool.clear();
+        card = null;
+    }
+
+    public boolean getDrawShadow() {
+        return drawShadow;
     }
 
     public void setBackgroundColor(@ColorInt int color) {
         drawable.setColor(color);
+        for (RoundRectDrawableWithShadow d : pool.values()) d.setColor(color);
+        if (card != null) card.setColor(color);
     }
 
     public void setCornerRadius(float radius) {
         drawable.setCornerRadius(radius);
+        pool.clear();
+        card = null;
+    }
+
+    public void setShadowCacheEnabled(boolean enabled) {
+        drawable.setShadowCacheEnabled(enabled);
+        pool.clear();
+        card = null;
     }
 }
@@ -1,16 +1,12 @@
 package com.mypopsy.floatingsearchview.demo;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.speech.RecognizerIntent;
-import android.text.Editable;
-import android.text.Html;
 import android.text.TextUtils;
-import android.text.TextWatcher;
 import android.view.HapticFeedbackConstants;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
@@ -30,6 +26,7 @@ import androidx.appcompat.widget.ActionMenuView;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.ViewPropertyAnimatorCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.mypopsy.drawable.SearchArrowDrawable;
@@ -38,12 +35,18 @@ import com.mypopsy.drawable.model.CrossModel;
 import com.mypopsy.drawable.util.Bezier;
 import com.mypopsy.floatingsearchview.demo.adapter.ArrayRecyclerAdapter;
 import com.mypopsy.floatingsearchview.demo.search.SearchController;
+import com.mypopsy.floatingsearchview.demo.search.SearchPrefetcher;
 import com.mypopsy.floatingsearchview.demo.search.SearchResult;
+import com.mypopsy.floatingsearchview.demo.search.SuggestionStore;
 import com.mypopsy.floatingsearchview.demo.utils.PackageUtils;
 import com.mypopsy.floatingsearchview.demo.utils.ViewUtils;
+import com.mypopsy.widget.DebouncePolicy;
 import com.mypopsy.widget.FloatingSearchView;
+import com.mypopsy.widget.SuggestionsProvider;
+import com.mypopsy.widget.adapter.SuggestionTextLayout;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.inject.Inject;
 
@@ -51,7 +54,7 @@ import dagger.hilt.android.AndroidEntryPoint;
 
 @AndroidEntryPoint
 public class MainActivity extends AppCompatActivity implements
-        SearchController.Listener {
+        SearchController.Listener, SuggestionsProvider {
 
     private static final int REQ_CODE_SPEECH_INPUT = 42;
 
@@ -59,6 +62,9 @@ public class MainActivity extends AppCompatActivity implements
     private SearchAdapter mAdapter;
 
     @Inject SearchController mSearch;
+    @Inject SuggestionStore mSuggestions;
+    @Inject DebouncePolicy mDebouncePolicy;
+    @Inject SearchPrefetcher mPrefetcher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -67,6 +73,7 @@ public class MainActivity extends AppCompatActivity implements
         setContentView(R.layout.activity_main);
 
         mSearch.setListener(this);
+        mSuggestions.preload();
 
         mSearchView = findViewById(R.id.search);
         mAdapter = new SearchAdapter();
@@ -77,25 +84,16 @@ public class MainActivity extends AppCompatActivity implements
 
 
 
-        mSearchView.setOnSearchListener(text -> mSearchView.setActivated(false));
-
+        mSearchView.setOnSearchListener(text -> {
+            mSuggestions.addToHistory(text.toString());
+            mSearchView.setActivated(false);
+        });
 
-        mSearchView.addTextChangedListener(new TextWatcher() {
-            @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-            }
 
-            @Override
-            public void onTextChanged(CharSequence query, int start, int before, int count) {
-//                showClearButton(query.length() > 0 && mSearchView.isActivated());
-                search(query.toString().trim());
-            }
-
-            @Override
-            public void afterTextChanged(Editable s) {
-
-            }
-        });
+        // the search view debounces and de-duplicates the queries, the debounce adapting
+        // to the latency reported by the search controller
+        mSearchView.setDebouncePolicy(mDebouncePolicy);
+        mSearchView.setSuggestionsProvider(this);
 
         mSearchView.setOnSearchFocusChangedListener(focused -> {
             boolean textEmpty = mSearchView.getText().length() == 0;
@@ -109,9 +107,18 @@ public class MainActivity extends AppCompatActivity implements
         mSearchView.setText(null);
     }
 
-    private void search(String query) {
+    @Override
+    public void onSuggestionsRequested(@NonNull Request request) {
 //        showProgressBar(mSearchView.isActivated());
-        mSearch.search(query);
+        // superseded requests abort their in-flight search
+        request.setOnCancelListener(canceled -> mSearch.cancel());
+        mSearch.search(request.getQuery());
+    }
+
+    @Override
+    public void onSuggestionsCleared() {
+        mSearch.cancel();
+        mAdapter.submit(null);
     }
 
 
@@ -131,6 +138,19 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // prefetches only run while the search is visible
+        mPrefetcher.start();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mPrefetcher.stop();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -144,14 +164,11 @@ public class MainActivity extends AppCompatActivity implements
         //nothing to do
     }
 
-    @SuppressLint("NotifyDataSetChanged")
     @Override
     public void onSearchResults(SearchResult... searchResults) {
-        mAdapter.setNotifyOnChange(false);
-        mAdapter.clear();
-        if (searchResults != null) mAdapter.addAll(searchResults);
-        mAdapter.setNotifyOnChange(true);
-        mAdapter.notifyDataSetChanged();
+        // lay the rows out in the background while the diff is computed
+        if (searchResults != null) mAdapter.prefetch(searchResults);
+        mAdapter.submit(searchResults == null ? null : Arrays.asList(searchResults));
 //        showProgressBar(false);
     }
 
@@ -161,6 +178,7 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     private void onItemClick(SearchResult result) {
+        mSuggestions.addToHistory(mSearchView.getText().toString());
         mSearchView.setActivated(false);
         if(!TextUtils.isEmpty(result.url)) PackageUtils.start(this, Uri.parse(result.url));
     }
@@ -182,9 +200,47 @@ public class MainActivity extends AppCompatActivity implements
     private class SearchAdapter extends ArrayRecyclerAdapter<SearchResult, SuggestionViewHolder> {
 
         private LayoutInflater inflater;
+        // styled like the bound rows, to lay their texts out ahead of binding
+        private TextView titleTemplate, urlTemplate;
 
         SearchAdapter() {
             setHasStableIds(true);
+            setItemIdStrategy(result -> hashId(result.url, result.title));
+            setKeyExtractor(result -> result.url != null ? result.url : result.title);
+            setDiffCallback(new DiffUtil.ItemCallback<SearchResult>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull SearchResult oldItem, @NonNull SearchResult newItem) {
+                    return TextUtils.equals(oldItem.url, newItem.url)
+                            && TextUtils.equals(oldItem.title, newItem.title);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull SearchResult oldItem, @NonNull SearchResult newItem) {
+                    return TextUtils.equals(oldItem.visibleUrl, newItem.visibleUrl);
+                }
+            });
+        }
+
+        /**
+         * Lays out the texts of the given results in the background, so that they are ready
+         * when bound.
+         */
+        void prefetch(SearchResult[] results) {
+            if (titleTemplate == null) {
+                if (inflater == null) inflater = LayoutInflater.from(mSearchView.getContext());
+                final View row = inflater.inflate(R.layout.item_suggestion, mSearchView, false);
+                titleTemplate = row.findViewById(R.id.text);
+                urlTemplate = row.findViewById(R.id.url);
+            }
+            final CharSequence[] titles = new CharSequence[results.length];
+            final CharSequence[] urls = new CharSequence[results.length];
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) continue;
+                titles[i] = results[i].getStyledTitle();
+                urls[i] = results[i].visibleUrl;
+            }
+            SuggestionTextLayout.prefetch(titleTemplate, titles);
+            SuggestionTextLayout.prefetch(urlTemplate, urls);
         }
 
         @NonNull
@@ -198,11 +254,6 @@ public class MainActivity extends AppCompatActivity implements
         public void onBindViewHolder(SuggestionViewHolder holder, int position) {
             holder.bind(getItem(position));
         }
-
-        @Override
-        public long getItemId(int position) {
-            return position;
-        }
     }
 
     private class SuggestionViewHolder extends RecyclerView.ViewHolder {
@@ -219,12 +270,12 @@ public class MainActivity extends AppCompatActivity implements
             left.setImageResource(R.drawable.ic_google);
             itemView.findViewById(R.id.text_container)
                     .setOnClickListener(v -> onItemClick(mAdapter.getItem(getBindingAdapterPosition())));
-            right.setOnClickListener(v -> mSearchView.setText(text.getText()));
+            right.setOnClickListener(v -> mSearchView.setText(mAdapter.getItem(getBindingAdapterPosition()).getStyledTitle()));
         }
 
         void bind(SearchResult result) {
-            text.setText(Html.fromHtml(result.title));
-            url.setText(result.visibleUrl);
+            SuggestionTextLayout.setText(text, result.getStyledTitle());
+            SuggestionTextLayout.setText(url, result.visibleUrl);
             url.setVisibility(result.visibleUrl == null ? View.GONE : View.VISIBLE);
         }
     }
@@ -1,7 +1,12 @@
 package com.mypopsy.floatingsearchview.demo.adapter;
 
-import android.annotation.SuppressLint;
+import android.os.Handler;
+import android.os.Looper;
 
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
@@ -9,37 +14,104 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Array backed adapter, which content can be modified from any thread.
+ *
+ * The array is stored as immutable snapshots: writers apply their change to a copy of the latest
+ * snapshot and publish it atomically, without locking. Changes made on the main thread are
+ * notified right away, the others are published to the RecyclerView on the main thread as
+ * minimal diffs.
+ */
 public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder>
         extends RecyclerView.Adapter<VH> {
 
+    // shared by all the adapters, diffs are short-lived
+    private static final Executor sDiffExecutor = Executors.newFixedThreadPool(2, new DiffThreadFactory());
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
     /**
-     * Contains the list of objects that represent the data of this ArrayAdapter.
+     * The latest snapshot of the array, written by any thread.
      * The content of this list is referred to as "the array" in the documentation.
      */
-    private final List<T> mObjects;
+    private final AtomicReference<List<T>> mLatest;
+    /**
+     * The snapshot the RecyclerView was notified of, only replaced on the main thread.
+     */
+    private volatile List<T> mObjects;
     /**
-     * Lock used to modify the content of {@link #mObjects}. Any write operation
-     * performed on the array should be synchronized on this lock.
+     * Whether the publication of {@link #mLatest} is already scheduled on the main thread.
      */
-    private final Object mLock = new Object();
+    private final AtomicBoolean mPublishScheduled = new AtomicBoolean();
     /**
      * Indicates whether or not {@link #notifyDataSetChanged()} must be called whenever
      * {@link #mObjects} is modified.
      */
     private boolean mNotifyOnChange = true;
+    /**
+     * Identifies items and compares their content when diffing snapshots.
+     */
+    private volatile DiffUtil.ItemCallback<T> mDiffCallback = new DiffUtil.ItemCallback<T>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return true;
+        }
+    };
+
+    /**
+     * Derives the stable id of the items, or null to use their position.
+     */
+    private ItemIdStrategy<? super T> mIdStrategy;
+    // the ids of the items of mIdsSnapshot, lazily computed
+    private long[] mIds;
+    private List<T> mIdsSnapshot;
+    /**
+     * Extracts the keys indexing the positions of the items, or null to search them linearly.
+     */
+    private volatile KeyExtractor<? super T> mKeyExtractor;
+    // the positions of the items of the latest snapshot by key, carried forward by the updates,
+    // guarded by mIndexLock
+    private PositionIndex<T> mIndex;
+    private final Object mIndexLock = new Object();
+
+    private final Runnable mPublish = new Runnable() {
+        @Override
+        public void run() {
+            mPublishScheduled.set(false);
+            final List<T> latest = mLatest.get();
+            if (latest != mObjects) dispatchDiff(mObjects, latest);
+        }
+    };
 
     public ArrayRecyclerAdapter() {
-        this(new ArrayList<T>());
+        this(Collections.<T>emptyList());
     }
 
     public ArrayRecyclerAdapter(T[] objects) {
         this(Arrays.asList(objects));
     }
 
+    /**
+     * @param objects The initial content of the array, copied.
+     */
     public ArrayRecyclerAdapter(List<T> objects) {
-        mObjects = objects;
+        mObjects = Collections.unmodifiableList(new ArrayList<>(objects));
+        mLatest = new AtomicReference<>(mObjects);
     }
 
     /**
@@ -48,12 +120,10 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @param object The object to add at the end of the array.
      */
     public void add(T object) {
-        int pos;
-        synchronized (mLock) {
-            pos = getItemCount();
-            mObjects.add(object);
-        }
-        if (mNotifyOnChange) notifyItemInserted(pos);
+        update((snapshot, list) -> {
+            list.add(object);
+            return list.size() - 1;
+        }, this::notifyItemInserted, PositionIndex::reindexFrom);
     }
     /**
      * Adds the specified Collection at the end of the array.
@@ -61,12 +131,12 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @param collection The Collection to add at the end of the array.
      */
     public void addAll(Collection<? extends T> collection) {
-        int pos;
-        synchronized (mLock) {
-            pos = getItemCount();
-            mObjects.addAll(collection);
-        }
-        if (mNotifyOnChange) notifyItemRangeInserted(pos, collection.size());
+        final int count = collection.size();
+        update((snapshot, list) -> {
+            final int pos = list.size();
+            list.addAll(collection);
+            return pos;
+        }, pos -> notifyItemRangeInserted(pos, count), PositionIndex::reindexFrom);
     }
     /**
      * Adds the specified items at the end of the array.
@@ -75,12 +145,7 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      */
     @SafeVarargs
     public final void addAll (T... items) {
-        int start;
-        synchronized (mLock) {
-            start = getItemCount();
-            Collections.addAll(mObjects, items);
-        }
-        if (mNotifyOnChange) notifyItemRangeInserted(start, items.length);
+        addAll(Arrays.asList(items));
     }
     /**
      * Inserts the specified object at the specified index in the array.
@@ -89,10 +154,10 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @param index The index at which the object must be inserted.
      */
     public void insert(T object, int index) {
-        synchronized (mLock) {
-            mObjects.add(index, object);
-        }
-        if (mNotifyOnChange) notifyItemInserted(index);
+        update((snapshot, list) -> {
+            list.add(index, object);
+            return index;
+        }, this::notifyItemInserted, PositionIndex::reindexFrom);
     }
     /**
      * Removes the specified object from the array.
@@ -100,23 +165,21 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @param object The object to remove.
      */
     public void remove(T object) {
-        int pos;
-        synchronized (mLock) {
-            pos = getPosition(object);
-            if(pos == -1) return;
-            mObjects.remove(pos);
-        }
-        if (mNotifyOnChange) notifyItemRemoved(pos);
+        update((snapshot, list) -> {
+            final int pos = indexOf(snapshot, object);
+            if (pos != RecyclerView.NO_POSITION) list.remove(pos);
+            return pos;
+        }, this::notifyItemRemoved, (index, next, pos) -> index.removed(object, next, pos));
     }
     /**
      * Remove all elements from the list.
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void clear() {
-        synchronized (mLock) {
-            mObjects.clear();
-        }
-        if (mNotifyOnChange) notifyDataSetChanged();
+        update((snapshot, list) -> {
+            if (snapshot.isEmpty()) return RecyclerView.NO_POSITION;
+            list.clear();
+            return 0;
+        }, null, null);
     }
     /**
      * Sorts the content of this adapter using the specified comparator.
@@ -124,20 +187,148 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @param comparator The comparator used to sort the objects contained
      *        in this adapter.
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void sort(Comparator<? super T> comparator) {
-        synchronized (mLock) {
-            Collections.sort(mObjects, comparator);
+        update((snapshot, list) -> {
+            Collections.sort(list, comparator);
+            return 0;
+        }, null, null);
+    }
+
+    /**
+     * Sets the callback used to tell whether two items represent the same object, and whether
+     * its content changed, when diffing the array.
+     */
+    public void setDiffCallback(@NonNull DiffUtil.ItemCallback<T> callback) {
+        mDiffCallback = callback;
+    }
+
+    /**
+     * Replaces the content of the array by the given list, notifying only the changed items.
+     * The difference is computed on a background thread, and dropped if the array changed in
+     * the meantime, e.g. because a newer list was submitted.
+     *
+     * @param list The new content of the array, copied.
+     */
+    public void submit(@Nullable List<? extends T> list) {
+        final List<T> snapshot = list == null || list.isEmpty() ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(new ArrayList<T>(list));
+        mLatest.set(snapshot);
+        if (isMainThread())
+            dispatchDiff(mObjects, snapshot);
+        else
+            schedulePublish();
+    }
+
+    /**
+     * Applies the given edit to a copy of the latest snapshot, and publishes the result.
+     *
+     * @param notification Notifies the change, or null to publish it as a diff like
+     *                     {@link #submit(List)}.
+     * @param reindex Carries the position index forward to the result, or null to drop it.
+     */
+    private void update(Edit<T> edit, @Nullable Notification notification,
+                        @Nullable Reindex<T> reindex) {
+        List<T> previous, next;
+        int pos;
+        do {
+            previous = mLatest.get();
+            final List<T> copy = new ArrayList<>(previous);
+            pos = edit.apply(previous, copy);
+            if (pos == RecyclerView.NO_POSITION) return;
+            next = Collections.unmodifiableList(copy);
+        } while (!mLatest.compareAndSet(previous, next));
+
+        synchronized (mIndexLock) {
+            // a concurrent update may have carried it forward first: dropped, as it got stale
+            if (mIndex != null) {
+                if (reindex != null && mIndex.snapshot == previous) reindex.apply(mIndex, next, pos);
+                else mIndex = null;
+            }
         }
-        if (mNotifyOnChange) notifyDataSetChanged();
+
+        if (isMainThread() && mObjects == previous) {
+            if (notification == null) {
+                dispatchDiff(previous, next);
+                return;
+            }
+            // the RecyclerView is up to date: notify the change itself
+            mObjects = next;
+            if (mNotifyOnChange) notification.dispatch(pos);
+        } else {
+            schedulePublish();
+        }
+    }
+
+    private void schedulePublish() {
+        if (mPublishScheduled.compareAndSet(false, true)) sMainHandler.post(mPublish);
+    }
+
+    @MainThread
+    private void dispatchDiff(final List<T> oldList, final List<T> newList) {
+        if (oldList == newList) return;
+
+        // fast paths, no need to diff
+        if (oldList.isEmpty() || newList.isEmpty()) {
+            mObjects = newList;
+            if (!oldList.isEmpty()) notifyItemRangeRemoved(0, oldList.size());
+            if (!newList.isEmpty()) notifyItemRangeInserted(0, newList.size());
+            return;
+        }
+
+        final DiffUtil.ItemCallback<T> callback = mDiffCallback;
+        sDiffExecutor.execute(() -> {
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldList.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newList.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return callback.areItemsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    return callback.areContentsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                }
+
+                @Nullable
+                @Override
+                public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                    return callback.getChangePayload(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                }
+            });
+            sMainHandler.post(() -> {
+                // outdated: a newer snapshot was published, and will be dispatched on its own
+                if (mLatest.get() != newList) return;
+                if (mObjects != oldList) {
+                    // the RecyclerView moved on while diffing, start over from there
+                    if (mObjects != newList) schedulePublish();
+                    return;
+                }
+                mObjects = newList;
+                result.dispatchUpdatesTo(this);
+            });
+        });
+    }
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
     }
 
     /**
      * Control whether methods that change the list ({@link #add},
-     * {@link #insert}, {@link #remove}, {@link #clear}) automatically call
+     * {@link #insert}, {@link #remove}) automatically call
      * {@link #notifyDataSetChanged}.  If set to false, caller must
      * manually call notifyDataSetChanged() to have the changes
-     * reflected in the attached view.
+     * reflected in the attached view. {@link #clear}, {@link #sort} and
+     * {@link #submit} are always published as diffs.
      *
      * The default is true, and calling notifyDataSetChanged()
      * resets the flag to true.
@@ -170,12 +361,188 @@ public abstract class ArrayRecyclerAdapter<T, VH extends RecyclerView.ViewHolder
      * @return The position of the specified item.
      */
     public int getPosition(T item) {
-        return mObjects.indexOf(item);
+        return indexOf(mObjects, item);
     }
+
     /**
-     * {@inheritDoc}
+     * Sets the function extracting the keys of the items, used to index their positions:
+     * {@link #getPosition} and {@link #remove} then find items by key in constant time, rather
+     * than by equality in linear time.
+     *
+     * The index is built at the first lookup, then maintained by {@link #add}, {@link #insert}
+     * and {@link #remove}, which only reindex the items after the change. It is rebuilt at the
+     * next lookup after the other changes.
+     */
+    public void setKeyExtractor(@Nullable KeyExtractor<? super T> extractor) {
+        synchronized (mIndexLock) {
+            mKeyExtractor = extractor;
+            mIndex = null;
+        }
+    }
+
+    private int indexOf(List<T> snapshot, T item) {
+        final KeyExtractor<? super T> extractor = mKeyExtractor;
+        if (extractor == null) return snapshot.indexOf(item);
+        final Object key = extractor.getKey(item);
+        synchronized (mIndexLock) {
+            PositionIndex<T> index = mIndex;
+            if (index == null || index.snapshot != snapshot || index.extractor != extractor) {
+                // only the latest snapshot is worth indexing, as updates carry it forward
+                if (snapshot != mLatest.get()) return scan(snapshot, extractor, key);
+                index = new PositionIndex<>(snapshot, extractor);
+                mIndex = index;
+            }
+            final Integer pos = index.positions.get(key);
+            return pos != null ? pos : RecyclerView.NO_POSITION;
+        }
+    }
+
+    private static <T> int scan(List<T> snapshot, KeyExtractor<? super T> extractor, Object key) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (key.equals(extractor.getKey(snapshot.get(i)))) return i;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+    /**
+     * Returns the id of the item at the specified position: its position, unless an
+     * {@link ItemIdStrategy} was set.
      */
     public long getItemId(int position) {
-        return position;
+        if (mIdStrategy == null) return position;
+        final List<T> snapshot = mObjects;
+        if (snapshot != mIdsSnapshot) {
+            mIds = computeIds(snapshot, mIdStrategy);
+            mIdsSnapshot = snapshot;
+        }
+        return mIds[position];
+    }
+
+    /**
+     * Sets the strategy deriving the stable id of the items from their content, so that
+     * RecyclerView recognizes them across updates. Should be used together with
+     * {@link #setHasStableIds(boolean)}.
+     */
+    @MainThread
+    public void setItemIdStrategy(@Nullable ItemIdStrategy<? super T> strategy) {
+        mIdStrategy = strategy;
+        mIdsSnapshot = null;
+        mIds = null;
+    }
+
+    /**
+     * Computes the ids of the given items. Colliding ids are probed to the next free value:
+     * the first item keeps its id, so ids only change for the (rare) colliding items.
+     */
+    private static <T> long[] computeIds(List<T> items, ItemIdStrategy<? super T> strategy) {
+        final long[] ids = new long[items.size()];
+        final Set<Long> used = new HashSet<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            long id = strategy.getItemId(items.get(i));
+            while (id == RecyclerView.NO_ID || !used.add(id)) id++;
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Hashes the given values into a 64-bit id (FNV-1a), null values included.
+     */
+    public static long hashId(@Nullable CharSequence... values) {
+        long hash = 0xcbf29ce484222325L;
+        if (values == null) return hash;
+        for (CharSequence value : values) {
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    hash ^= value.charAt(i);
+                    hash *= 0x100000001b3L;
+                }
+            }
+            // separates the values, so that ("ab", "c") and ("a", "bc") differ
+            hash ^= 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private interface Edit<T> {
+        /**
+         * Edits the given copy of the array.
+         *
+         * @param snapshot The snapshot the copy was made from.
+         * @return The position of the change, or {@link RecyclerView#NO_POSITION} to abort.
+         */
+        int apply(List<T> snapshot, List<T> list);
+    }
+
+    private interface Notification {
+        void dispatch(int position);
+    }
+
+    private interface Reindex<T> {
+        /**
+         * Updates the index of the edited snapshot for its result.
+         */
+        void apply(PositionIndex<T> index, List<T> next, int position);
+    }
+
+    /**
+     * Extracts the key of an item, unique within the array.
+     */
+    public interface KeyExtractor<T> {
+        Object getKey(T item);
+    }
+
+    private static final class PositionIndex<T> {
+        List<T> snapshot;
+        final KeyExtractor<? super T> extractor;
+        final Map<Object, Integer> positions;
+
+        PositionIndex(List<T> snapshot, KeyExtractor<? super T> extractor) {
+            this.extractor = extractor;
+            positions = new HashMap<>(snapshot.size() * 2);
+            reindexFrom(snapshot, 0);
+        }
+
+        /**
+         * Indexes the given snapshot, which only differs from the indexed one from the given
+         * position on.
+         */
+        void reindexFrom(List<T> next, int from) {
+            // backwards, so that duplicated keys map to their first position
+            for (int i = next.size() - 1; i >= from; i--) {
+                final Object key = extractor.getKey(next.get(i));
+                final Integer current = positions.get(key);
+                // keep the keys first found before the change
+                if (current == null || current >= from) positions.put(key, i);
+            }
+            snapshot = next;
+        }
+
+        void removed(T item, List<T> next, int position) {
+            final Object key = extractor.getKey(item);
+            final Integer current = positions.get(key);
+            if (current != null && current == position) positions.remove(key);
+            reindexFrom(next, position);
+        }
+    }
+
+    /**
+     * Derives the id of an item from its content.
+     */
+    public interface ItemIdStrategy<T> {
+        long getItemId(T item);
+    }
+
+    private static final class DiffThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "adapter-diff-" + mCount.incrementAndGet());
+            // idle diff threads must not keep the process alive
+            thread.setDaemon(true);
+            return thread;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,35 +1,98 @@
 package com.mypopsy.floatingsearchview.demo.hilt.module;
 
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.mypopsy.floatingsearchview.demo.BuildConfig;
+import com.mypopsy.floatingsearchview.demo.http.CacheControlInterceptor;
+import com.mypopsy.floatingsearchview.demo.http.NetworkMetrics;
+import com.mypopsy.floatingsearchview.demo.http.NetworkMetricsListener;
+import com.mypopsy.floatingsearchview.demo.http.SingleFlightInterceptor;
+import com.mypopsy.floatingsearchview.demo.search.ResponseConverterFactory;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 import dagger.hilt.InstallIn;
+import dagger.hilt.android.qualifiers.ApplicationContext;
 import dagger.hilt.components.SingletonComponent;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Converter;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 @InstallIn(SingletonComponent.class)
 @Module
 public class RetrofitModule {
 
+    private static final String TAG = "http";
+    private static final int METRICS_CAPACITY = 128;
+    private static final long SUGGESTIONS_MAX_AGE = 10; // minutes
+    // searches hit a single host: keep a couple of connections warm between bursts of typing
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long KEEP_ALIVE_DURATION = 5; // minutes
+    private static final long CONNECT_TIMEOUT = 5; // seconds
+    private static final long READ_TIMEOUT = 10; // seconds
+
+    @Provides
+    @Singleton
+    NetworkMetrics provideNetworkMetrics() {
+        NetworkMetrics metrics = new NetworkMetrics(METRICS_CAPACITY);
+        if (BuildConfig.DEBUG) metrics.setListener(record -> Log.d(TAG, record.toString()));
+        return metrics;
+    }
+
+    /**
+     * The HTTP cache, whose hit and network counts are available from
+     * {@link Cache#hitCount()} and {@link Cache#networkCount()}; null if disabled.
+     */
+    @Provides
+    @Singleton
+    @Nullable
+    Cache provideHttpCache(@ApplicationContext Context context) {
+        // the size is set by build type
+        if (BuildConfig.HTTP_CACHE_SIZE <= 0) return null;
+        return new Cache(new File(context.getCacheDir(), "http"), BuildConfig.HTTP_CACHE_SIZE);
+    }
+
+    @Provides
+    @Singleton
+    SingleFlightInterceptor provideSingleFlightInterceptor() {
+        return new SingleFlightInterceptor();
+    }
+
     @Provides
     @Singleton
-    OkHttpClient provideHttpClient() {
-        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-        logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-        return new OkHttpClient.Builder()
-                .addInterceptor(logging).build();
+    OkHttpClient provideHttpClient(NetworkMetrics metrics, @Nullable Cache cache,
+                                   SingleFlightInterceptor singleFlight) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .eventListenerFactory(new NetworkMetricsListener.Factory(metrics,
+                        BuildConfig.NETWORK_METRICS_SAMPLE_RATE));
+        if (cache != null) {
+            // without a cache, collapsed requests would hit the network anyway
+            builder.cache(cache)
+                    .addInterceptor(singleFlight)
+                    .addNetworkInterceptor(new CacheControlInterceptor()
+                            .maxAge("/ajax/services/search/", SUGGESTIONS_MAX_AGE, TimeUnit.MINUTES));
+        }
+        return builder.build();
     }
 
     @Provides
     @Singleton
     Converter.Factory provideConverter() {
-        return GsonConverterFactory.create();
+        return ResponseConverterFactory.create();
     }
 
     @Provides
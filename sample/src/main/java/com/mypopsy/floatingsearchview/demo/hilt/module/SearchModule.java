@@ -1,14 +1,29 @@
 package com.mypopsy.floatingsearchview.demo.hilt.module;
 
+import android.content.Context;
+
+import com.mypopsy.floatingsearchview.demo.search.CachingSearchController;
+import com.mypopsy.floatingsearchview.demo.search.DiskSearchCache;
 import com.mypopsy.floatingsearchview.demo.search.GoogleSearch;
 import com.mypopsy.floatingsearchview.demo.search.GoogleSearchController;
+import com.mypopsy.floatingsearchview.demo.search.HybridSearchController;
+import com.mypopsy.floatingsearchview.demo.search.LocalSearchController;
 import com.mypopsy.floatingsearchview.demo.search.SearchController;
+import com.mypopsy.floatingsearchview.demo.search.SearchPrefetcher;
+import com.mypopsy.floatingsearchview.demo.search.SearchResultCache;
+import com.mypopsy.widget.AdaptiveDebouncePolicy;
+import com.mypopsy.widget.DebouncePolicy;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 import dagger.hilt.InstallIn;
+import dagger.hilt.android.qualifiers.ApplicationContext;
 import dagger.hilt.components.SingletonComponent;
 import retrofit2.Retrofit;
 
@@ -16,6 +31,13 @@ import retrofit2.Retrofit;
 @Module
 public class SearchModule {
 
+    private static final int CACHE_SIZE = 256 * 1024; // bytes
+    private static final long CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final long DISK_CACHE_SIZE = 1024 * 1024; // bytes
+    private static final int DISK_CACHE_SLOTS = 2048;
+    private static final long MIN_DEBOUNCE = 100; // milliseconds
+    private static final long MAX_DEBOUNCE = 1000; // milliseconds
+
     @Provides
     @Singleton
     GoogleSearch provideGoogleSearch(Retrofit.Builder builder) {
@@ -23,7 +45,32 @@ public class SearchModule {
     }
 
     @Provides
-    SearchController provideSearchController(GoogleSearchController searchController) {
-        return searchController;
+    @Singleton
+    SearchResultCache provideSearchResultCache(@ApplicationContext Context context) {
+        SearchResultCache cache = new SearchResultCache(CACHE_SIZE, CACHE_TTL);
+        cache.setDiskCache(new DiskSearchCache(new File(context.getCacheDir(), "search"),
+                DISK_CACHE_SIZE, DISK_CACHE_SLOTS), Executors.newSingleThreadExecutor());
+        return cache;
+    }
+
+    /**
+     * Shared by the search view, which debounces the queries, and the controller reporting
+     * the backend latency.
+     */
+    @Provides
+    @Singleton
+    DebouncePolicy provideDebouncePolicy() {
+        return new AdaptiveDebouncePolicy(MIN_DEBOUNCE, MAX_DEBOUNCE);
+    }
+
+    @Provides
+    SearchController provideSearchController(LocalSearchController localSearchController,
+                                             GoogleSearchController searchController,
+                                             SearchResultCache cache,
+                                             SearchPrefetcher prefetcher) {
+        HybridSearchController hybridSearchController = new HybridSearchController(
+                localSearchController, new CachingSearchController(searchController, cache));
+        hybridSearchController.setPrefetcher(prefetcher);
+        return hybridSearchController;
     }
 }
@@ -0,0 +1,63 @@
+package com.mypopsy.floatingsearchview.demo.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Network interceptor making the successful GET responses of the configured paths cacheable
+ * for a given max-age, so that they are stored by the HTTP cache. Responses with caching
+ * directives of their own (Cache-Control, Expires, Pragma) are left as the server sent them:
+ * no-store or private responses are never stored.
+ *
+ * Responses carrying validators (ETag, Last-Modified) are then revalidated with conditional
+ * requests by the cache once stale.
+ */
+public class CacheControlInterceptor implements Interceptor {
+
+    // max-age in seconds, by path prefix
+    private final Map<String, Long> mMaxAges = new LinkedHashMap<>();
+
+    /**
+     * Caches the responses of the paths starting with the given prefix for the given duration.
+     */
+    public CacheControlInterceptor maxAge(@NonNull String pathPrefix, long duration, @NonNull TimeUnit unit) {
+        if (duration <= 0) throw new IllegalArgumentException("invalid max-age");
+        mMaxAges.put(pathPrefix, unit.toSeconds(duration));
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        final Request request = chain.request();
+        final Response response = chain.proceed(request);
+        if (!"GET".equals(request.method()) || !response.isSuccessful()) return response;
+
+        final Long maxAge = getMaxAge(request.url().encodedPath());
+        if (maxAge == null || hasCacheDirectives(response)) return response;
+        return response.newBuilder()
+                .header("Cache-Control", "max-age=" + maxAge)
+                .build();
+    }
+
+    private static boolean hasCacheDirectives(Response response) {
+        return response.header("Cache-Control") != null
+                || response.header("Expires") != null
+                || response.header("Pragma") != null;
+    }
+
+    private Long getMaxAge(String path) {
+        for (Map.Entry<String, Long> entry : mMaxAges.entrySet()) {
+            if (path.startsWith(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+}
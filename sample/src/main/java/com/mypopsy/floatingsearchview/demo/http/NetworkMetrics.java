@@ -0,0 +1,130 @@
+package com.mypopsy.floatingsearchview.demo.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed size ring buffer of the metrics of sampled HTTP calls, the oldest being overwritten.
+ */
+public class NetworkMetrics {
+
+    public interface Listener {
+        /**
+         * Called on the network thread as each sampled call ends.
+         */
+        void onRecord(@NonNull Record record);
+    }
+
+    public enum CacheStatus {
+        /** Not served from the cache, or no cache. */
+        NETWORK,
+        /** Served from the cache, without network. */
+        HIT,
+        /** Validated against the network, then served from the cache. */
+        CONDITIONAL_HIT
+    }
+
+    /**
+     * Metrics of a single call. Durations are in milliseconds, -1 when not applicable (e.g. no
+     * DNS lookup or connection on a pooled connection).
+     */
+    public static final class Record {
+        public final String method;
+        public final String url;
+        public final int code;
+        public final boolean failed;
+        public final CacheStatus cacheStatus;
+        public final long dnsMillis;
+        public final long connectMillis;
+        public final long ttfbMillis;
+        public final long bodyMillis;
+        public final long totalMillis;
+        public final long requestBytes;
+        public final long responseBytes;
+
+        Record(String method, String url, int code, boolean failed, CacheStatus cacheStatus,
+               long dnsMillis, long connectMillis, long ttfbMillis, long bodyMillis,
+               long totalMillis, long requestBytes, long responseBytes) {
+            this.method = method;
+            this.url = url;
+            this.code = code;
+            this.failed = failed;
+            this.cacheStatus = cacheStatus;
+            this.dnsMillis = dnsMillis;
+            this.connectMillis = connectMillis;
+            this.ttfbMillis = ttfbMillis;
+            this.bodyMillis = bodyMillis;
+            this.totalMillis = totalMillis;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return method + ' ' + url + " -> " + (failed ? "failed" : code) + ' ' + cacheStatus
+                    + " dns=" + dnsMillis + "ms connect=" + connectMillis + "ms ttfb=" + ttfbMillis
+                    + "ms body=" + bodyMillis + "ms total=" + totalMillis + "ms sent="
+                    + requestBytes + "B received=" + responseBytes + 'B';
+        }
+    }
+
+    private final Record[] mRecords;
+    private int mNext;
+    private int mSize;
+    private long mTotal;
+    private volatile Listener mListener;
+
+    public NetworkMetrics(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("invalid capacity");
+        mRecords = new Record[capacity];
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    void add(Record record) {
+        synchronized (mRecords) {
+            mRecords[mNext] = record;
+            mNext = (mNext + 1) % mRecords.length;
+            mSize = Math.min(mSize + 1, mRecords.length);
+            mTotal++;
+        }
+        final Listener listener = mListener;
+        if (listener != null) listener.onRecord(record);
+    }
+
+    /**
+     * Returns the buffered records, oldest first.
+     */
+    @NonNull
+    public List<Record> getRecords() {
+        synchronized (mRecords) {
+            final List<Record> records = new ArrayList<>(mSize);
+            final int first = (mNext - mSize + mRecords.length) % mRecords.length;
+            for (int i = 0; i < mSize; i++) records.add(mRecords[(first + i) % mRecords.length]);
+            return records;
+        }
+    }
+
+    /**
+     * Returns how many records were sampled so far, including the overwritten ones.
+     */
+    public long getTotalCount() {
+        synchronized (mRecords) {
+            return mTotal;
+        }
+    }
+
+    public void clear() {
+        synchronized (mRecords) {
+            Arrays.fill(mRecords, null);
+            mNext = mSize = 0;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.mypopsy.floatingsearchview.demo.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Times the phases of a call (DNS, connect, time to first byte, body) and counts its bytes
+ * from OkHttp events, without touching the body, then records them into {@link NetworkMetrics}.
+ */
+public class NetworkMetricsListener extends EventListener {
+
+    /**
+     * Creates listeners for a random sample of the calls, the others being left untracked.
+     */
+    public static class Factory implements EventListener.Factory {
+
+        private final NetworkMetrics mMetrics;
+        private final float mSampleRate;
+
+        /**
+         * @param sampleRate the fraction of the calls to track, between 0 and 1.
+         */
+        public Factory(@NonNull NetworkMetrics metrics, float sampleRate) {
+            if (sampleRate < 0 || sampleRate > 1) throw new IllegalArgumentException("invalid sample rate");
+            mMetrics = metrics;
+            mSampleRate = sampleRate;
+        }
+
+        @NonNull
+        @Override
+        public EventListener create(@NonNull Call call) {
+            if (mSampleRate < 1 && ThreadLocalRandom.current().nextFloat() >= mSampleRate)
+                return EventListener.NONE;
+            return new NetworkMetricsListener(mMetrics);
+        }
+    }
+
+    private final NetworkMetrics mMetrics;
+
+    private long mCallStart;
+    private long mDnsStart, mDnsEnd;
+    private long mConnectStart, mConnectEnd;
+    private long mRequestStart;
+    private long mResponseStart;
+    private long mBodyStart, mBodyEnd;
+    private long mRequestBytes;
+    private long mResponseBytes;
+    private int mCode = -1;
+    private NetworkMetrics.CacheStatus mCacheStatus = NetworkMetrics.CacheStatus.NETWORK;
+
+    NetworkMetricsListener(NetworkMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        mCallStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        mDnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        mDnsEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        mConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                           @NonNull Proxy proxy, @Nullable Protocol protocol) {
+        mConnectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        mRequestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        mRequestBytes += request.headers().byteCount();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        mRequestBytes += byteCount;
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        mResponseStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+        mCode = response.code();
+        mResponseBytes += response.headers().byteCount();
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+        mBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        mBodyEnd = System.nanoTime();
+        mResponseBytes += byteCount;
+    }
+
+    @Override
+    public void cacheHit(@NonNull Call call, @NonNull Response response) {
+        mCode = response.code();
+        mCacheStatus = NetworkMetrics.CacheStatus.HIT;
+    }
+
+    @Override
+    public void cacheConditionalHit(@NonNull Call call, @NonNull Response cachedResponse) {
+        mCacheStatus = NetworkMetrics.CacheStatus.CONDITIONAL_HIT;
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        record(call, false);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        record(call, true);
+    }
+
+    private void record(Call call, boolean failed) {
+        final long end = System.nanoTime();
+        final HttpUrl url = call.request().url();
+        // the query is left out: it holds what the user typed
+        mMetrics.add(new NetworkMetrics.Record(call.request().method(),
+                url.host() + url.encodedPath(), mCode, failed, mCacheStatus,
+                millis(mDnsStart, mDnsEnd), millis(mConnectStart, mConnectEnd),
+                millis(mRequestStart, mResponseStart), millis(mBodyStart, mBodyEnd),
+                millis(mCallStart, end), mRequestBytes, mResponseBytes));
+    }
+
+    private static long millis(long start, long end) {
+        if (start == 0 || end < start) return -1;
+        return TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+}
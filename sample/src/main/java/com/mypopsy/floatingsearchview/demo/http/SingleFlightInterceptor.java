@@ -0,0 +1,143 @@
+package com.mypopsy.floatingsearchview.demo.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Application interceptor collapsing identical concurrent GET requests, to be used with an
+ * HTTP cache: while a request is in flight, identical ones wait for its response to be fully
+ * read (and therefore cached), then proceed and are served by the cache.
+ *
+ * Bodies are never buffered nor shared. Followers still go to the network if the response was
+ * not cacheable, the leader failed, or waiting took longer than the call timeouts.
+ */
+public class SingleFlightInterceptor implements Interceptor {
+
+    private static final long POLL_INTERVAL = 100; // milliseconds
+
+    private final ConcurrentHashMap<String, Flight> mFlights = new ConcurrentHashMap<>();
+    private final AtomicInteger mCoalesced = new AtomicInteger();
+
+    /**
+     * Returns how many requests waited for an identical one so far.
+     */
+    public int getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        final Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.cacheControl().noCache())
+            return chain.proceed(request);
+
+        final String key = request.url().toString();
+        final Flight flight = new Flight();
+        final Flight leader = mFlights.putIfAbsent(key, flight);
+        if (leader != null) {
+            mCoalesced.incrementAndGet();
+            leader.await(chain, chain.connectTimeoutMillis() + chain.readTimeoutMillis());
+            return chain.proceed(request);
+        }
+
+        final Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            land(key, flight);
+            throw e;
+        }
+        final ResponseBody body = response.body();
+        if (body == null) {
+            land(key, flight);
+            return response;
+        }
+        return response.newBuilder().body(new LandingBody(body, () -> land(key, flight))).build();
+    }
+
+    private void land(String key, Flight flight) {
+        mFlights.remove(key, flight);
+        flight.latch.countDown();
+    }
+
+    private static final class Flight {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        void await(Chain chain, long timeoutMillis) throws IOException {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                // polls, so that a cancelled follower stops waiting
+                while (!latch.await(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (chain.call().isCanceled()) throw new IOException("Canceled");
+                    if (timeoutMillis > 0 && System.nanoTime() > deadline) return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Forwards the body of the leader, landing its flight once closed.
+     */
+    private static final class LandingBody extends ResponseBody {
+
+        private final ResponseBody mDelegate;
+        private final Runnable mOnClose;
+        private final AtomicBoolean mClosed = new AtomicBoolean();
+        private BufferedSource mSource;
+
+        LandingBody(ResponseBody delegate, Runnable onClose) {
+            mDelegate = delegate;
+            mOnClose = onClose;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mDelegate.contentLength();
+        }
+
+        @NonNull
+        @Override
+        public synchronized BufferedSource source() {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mDelegate.source()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            if (mClosed.compareAndSet(false, true)) mOnClose.run();
+                        }
+                    }
+                });
+            }
+            return mSource;
+        }
+    }
+}
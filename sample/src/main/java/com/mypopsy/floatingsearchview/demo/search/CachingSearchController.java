@@ -0,0 +1,120 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Serves searches from a {@link SearchResultCache} in front of any {@link SearchController}.
+ *
+ * Queries cached in memory are answered right away, without reaching the delegate. Otherwise,
+ * the delegate starts searching while the disk is looked up, so that a miss does not delay the
+ * search, and is cancelled on a disk hit. Meanwhile, results of a prefix cached in memory are
+ * delivered right away, filtered locally.
+ */
+public class CachingSearchController implements SearchController, SearchController.Listener {
+
+    private final SearchController mDelegate;
+    private final SearchResultCache mCache;
+    private Listener mListener;
+
+    // the query whose results are expected
+    private String mQuery;
+    // the last query started by the delegate
+    private String mDelegateQuery;
+    // bumped by every search, cancellation and delegate answer, discarding the pending disk lookups
+    private int mGeneration;
+
+    public CachingSearchController(@NonNull SearchController delegate, @NonNull SearchResultCache cache) {
+        mDelegate = delegate;
+        mCache = cache;
+        mDelegate.setListener(this);
+    }
+
+    public SearchResultCache getCache() {
+        return mCache;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void search(final String query) {
+        mQuery = SearchResultCache.normalize(query);
+        final int generation = ++mGeneration;
+
+        if (!TextUtils.isEmpty(mQuery)) {
+            SearchResult[] results = mCache.get(mQuery);
+            if (results != null) {
+                onCacheHit(query, results);
+                return;
+            }
+            results = mCache.getByPrefix(mQuery);
+            if (results != null && results.length > 0 && mListener != null)
+                mListener.onSearchPartialResults(query, results);
+            // the disk lookup is asynchronous: search in parallel, cancelled by a hit
+            mDelegate.search(query);
+            mCache.load(mQuery, (key, cached) -> {
+                if (generation == mGeneration && cached != null) onCacheHit(query, cached);
+            });
+            return;
+        }
+        mDelegate.search(query);
+    }
+
+    private void onCacheHit(String query, SearchResult[] results) {
+        // the delegate may be searching this query, or still be about to search a previous one
+        mDelegate.cancel();
+        if (mListener != null) {
+            mListener.onSearchStarted(query);
+            mListener.onSearchResults(results);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        mGeneration++;
+        mDelegate.cancel();
+    }
+
+    @Override
+    public SearchMetrics getMetrics() {
+        return mDelegate.getMetrics();
+    }
+
+    @Override
+    public void onSearchStarted(String query) {
+        mDelegateQuery = SearchResultCache.normalize(query);
+        if (mListener != null && mDelegateQuery.equals(mQuery)) mListener.onSearchStarted(query);
+    }
+
+    @Override
+    public void onSearchResults(SearchResult... results) {
+        // clearing results are not preceded by onSearchStarted()
+        if (TextUtils.isEmpty(mQuery)) {
+            if (mListener != null) mListener.onSearchResults(results);
+            return;
+        }
+        if (mDelegateQuery == null) return;
+        mCache.put(mDelegateQuery, results);
+        // the user may have moved on, e.g. to a cached query
+        if (!mDelegateQuery.equals(mQuery)) return;
+        // answered: a late disk hit must not replace these results
+        mGeneration++;
+        if (mListener != null) mListener.onSearchResults(results);
+    }
+
+    @Override
+    public void onSearchPartialResults(String query, SearchResult... results) {
+        if (mListener != null && SearchResultCache.normalize(query).equals(mQuery))
+            mListener.onSearchPartialResults(query, results);
+    }
+
+    @Override
+    public void onSearchError(Throwable throwable) {
+        if (mListener != null && (mDelegateQuery == null || mDelegateQuery.equals(mQuery)))
+            mListener.onSearchError(throwable);
+    }
+}
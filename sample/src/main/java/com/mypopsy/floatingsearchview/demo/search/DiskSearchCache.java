@@ -0,0 +1,416 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of search results, surviving process death.
+ *
+ * Results are appended to a data file in a compact binary format, and located through
+ * a memory-mapped open-addressing index keyed by the 64-bit hash of the query: a lookup is
+ * a few reads from memory plus a single positional read of the record.
+ *
+ * When the data file or the index is full, the most recent half of the live entries is kept.
+ * Records are checksummed, and an index or record failing validation is dropped.
+ *
+ * Every access does file I/O and may wait for a compaction: use it from a worker thread only.
+ */
+public class DiskSearchCache {
+
+    private static final String TAG = DiskSearchCache.class.getSimpleName();
+
+    private static final String INDEX_FILE = "search.idx";
+    private static final String DATA_FILE = "search.dat";
+
+    private static final int MAGIC = 0x46535649; // FSVI
+    private static final int VERSION = 1;
+
+    // magic, version, slot count, live count, data length
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+    private static final int HEADER_LIVE_COUNT = 12;
+    private static final int HEADER_DATA_LENGTH = 16;
+
+    // hash, offset, length, crc, expiration
+    private static final int SLOT_SIZE = 8 + 8 + 4 + 4 + 8;
+    private static final int SLOT_OFFSET = 8;
+    private static final int SLOT_LENGTH = 16;
+    private static final int SLOT_CRC = 20;
+    private static final int SLOT_EXPIRATION = 24;
+
+    private static final int TOMBSTONE = -1;
+    private static final float MAX_LOAD_FACTOR = .75f;
+
+    private final File mDirectory;
+    private final long mMaxDataSize;
+    private final int mSlotCount;
+
+    private RandomAccessFile mIndexFile;
+    private RandomAccessFile mDataFile;
+    private MappedByteBuffer mIndex;
+    private int mLiveCount;
+    // live slots and tombstones, which both lengthen the probe chains
+    private int mUsedCount;
+    private long mDataLength;
+
+    /**
+     * @param directory where to store the cache files
+     * @param maxDataSize the maximum size of the data file, in bytes
+     * @param slotCount the capacity of the index
+     */
+    public DiskSearchCache(@NonNull File directory, long maxDataSize, int slotCount) {
+        if (maxDataSize <= 0 || slotCount <= 0) throw new IllegalArgumentException();
+        mDirectory = directory;
+        mMaxDataSize = maxDataSize;
+        mSlotCount = slotCount;
+    }
+
+    /**
+     * Opens (or creates) the cache files, recovering from any corruption.
+     */
+    @WorkerThread
+    public synchronized void open() throws IOException {
+        if (isOpen()) return;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("unable to create " + mDirectory);
+        try {
+            map();
+        } catch (IOException e) {
+            Log.w(TAG, "corrupted cache, resetting", e);
+            close();
+            reset();
+            map();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return mIndex != null;
+    }
+
+    public synchronized void close() {
+        closeQuietly(mIndexFile);
+        closeQuietly(mDataFile);
+        mIndexFile = null;
+        mDataFile = null;
+        mIndex = null;
+    }
+
+    /**
+     * Returns the results cached for the given key, or null if missing, expired or corrupted.
+     */
+    @Nullable
+    @WorkerThread
+    public synchronized SearchResult[] get(@NonNull String key, long now) {
+        if (!isOpen()) return null;
+        final int slot = find(hash(key));
+        if (slot < 0) return null;
+        final int position = slotPosition(slot);
+        if (mIndex.getLong(position + SLOT_EXPIRATION) < now) {
+            remove(slot);
+            return null;
+        }
+        try {
+            final byte[] record = read(mIndex.getLong(position + SLOT_OFFSET),
+                    mIndex.getInt(position + SLOT_LENGTH));
+            if (crc(record) != mIndex.getInt(position + SLOT_CRC))
+                throw new IOException("checksum mismatch");
+            return decode(record, key);
+        } catch (IOException e) {
+            Log.w(TAG, "dropping corrupted record", e);
+            remove(slot);
+            return null;
+        }
+    }
+
+    /**
+     * Returns when the entry for the given key expires, or -1 if missing.
+     */
+    @WorkerThread
+    public synchronized long getExpiration(@NonNull String key) {
+        if (!isOpen()) return -1;
+        final int slot = find(hash(key));
+        return slot < 0 ? -1 : mIndex.getLong(slotPosition(slot) + SLOT_EXPIRATION);
+    }
+
+    @WorkerThread
+    public synchronized void put(@NonNull String key, @NonNull SearchResult[] results,
+                                 long expiration) {
+        if (!isOpen()) return;
+        try {
+            final byte[] record = encode(key, results);
+            if (record.length > mMaxDataSize / 2) return;
+            if (mDataLength + record.length > mMaxDataSize
+                    || mUsedCount + 1 > mSlotCount * MAX_LOAD_FACTOR)
+                compact(System.currentTimeMillis());
+            final long offset = mDataLength;
+            write(offset, record);
+            insert(hash(key), offset, record.length, crc(record), expiration);
+            setDataLength(offset + record.length);
+        } catch (IOException e) {
+            Log.w(TAG, "write failed, resetting", e);
+            clear();
+        }
+    }
+
+    @WorkerThread
+    public synchronized void clear() {
+        close();
+        try {
+            reset();
+            map();
+        } catch (IOException e) {
+            Log.e(TAG, "unable to reset cache", e);
+            close();
+        }
+    }
+
+    private void map() throws IOException {
+        final File indexFile = new File(mDirectory, INDEX_FILE);
+        final boolean exists = indexFile.exists();
+        final long indexSize = HEADER_SIZE + (long) mSlotCount * SLOT_SIZE;
+
+        mIndexFile = new RandomAccessFile(indexFile, "rw");
+        mDataFile = new RandomAccessFile(new File(mDirectory, DATA_FILE), "rw");
+        if (exists && mIndexFile.length() != indexSize)
+            throw new IOException("unexpected index size");
+        mIndex = mIndexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+
+        if (!exists) {
+            mIndex.putInt(0, MAGIC);
+            mIndex.putInt(4, VERSION);
+            mIndex.putInt(8, mSlotCount);
+            mIndex.putInt(HEADER_LIVE_COUNT, 0);
+            mIndex.putLong(HEADER_DATA_LENGTH, 0);
+            mDataFile.setLength(0);
+        } else if (mIndex.getInt(0) != MAGIC || mIndex.getInt(4) != VERSION
+                || mIndex.getInt(8) != mSlotCount) {
+            throw new IOException("invalid index header");
+        }
+
+        mLiveCount = mIndex.getInt(HEADER_LIVE_COUNT);
+        mDataLength = mIndex.getLong(HEADER_DATA_LENGTH);
+        if (mLiveCount < 0 || mLiveCount > mSlotCount
+                || mDataLength < 0 || mDataLength > mDataFile.length())
+            throw new IOException("invalid index state");
+        // drop anything written after the last indexed record
+        mDataFile.setLength(mDataLength);
+
+        mUsedCount = 0;
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (mIndex.getInt(slotPosition(slot) + SLOT_LENGTH) != 0) mUsedCount++;
+        }
+    }
+
+    private void reset() {
+        new File(mDirectory, INDEX_FILE).delete();
+        new File(mDirectory, DATA_FILE).delete();
+    }
+
+    /**
+     * Keeps the most recent half of the live, non-expired entries.
+     */
+    private void compact(long now) throws IOException {
+        final List<long[]> live = new ArrayList<>(mLiveCount);
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            final int position = slotPosition(slot);
+            final int length = mIndex.getInt(position + SLOT_LENGTH);
+            if (length <= 0 || mIndex.getLong(position + SLOT_EXPIRATION) < now) continue;
+            live.add(new long[]{mIndex.getLong(position), mIndex.getLong(position + SLOT_OFFSET),
+                    length, mIndex.getInt(position + SLOT_CRC),
+                    mIndex.getLong(position + SLOT_EXPIRATION)});
+        }
+        // records are appended, so the most recent ones have the highest offsets
+        Collections.sort(live, (a, b) -> Long.compare(b[1], a[1]));
+
+        final List<long[]> kept = new ArrayList<>();
+        final List<byte[]> records = new ArrayList<>();
+        long size = 0;
+        for (long[] entry : live) {
+            if (size + entry[2] > mMaxDataSize / 2 || kept.size() >= mSlotCount / 2) break;
+            final byte[] record = read(entry[1], (int) entry[2]);
+            if (crc(record) != (int) entry[3]) continue;
+            kept.add(entry);
+            records.add(record);
+            size += record.length;
+        }
+
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            final int position = slotPosition(slot);
+            mIndex.putLong(position, 0);
+            mIndex.putInt(position + SLOT_LENGTH, 0);
+        }
+        setLiveCount(0);
+        mUsedCount = 0;
+        setDataLength(0);
+        mDataFile.setLength(0);
+
+        long offset = 0;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            final long[] entry = kept.get(i);
+            final byte[] record = records.get(i);
+            write(offset, record);
+            insert(entry[0], offset, record.length, (int) entry[3], entry[4]);
+            offset += record.length;
+        }
+        setDataLength(offset);
+    }
+
+    private int find(long hash) {
+        int slot = (int) ((hash & Long.MAX_VALUE) % mSlotCount);
+        for (int i = 0; i < mSlotCount; i++) {
+            final int position = slotPosition(slot);
+            final int length = mIndex.getInt(position + SLOT_LENGTH);
+            if (length == 0) return -1;
+            if (length > 0 && mIndex.getLong(position) == hash) return slot;
+            slot = (slot + 1) % mSlotCount;
+        }
+        return -1;
+    }
+
+    private void insert(long hash, long offset, int length, int crc, long expiration) {
+        int slot = find(hash);
+        if (slot < 0) {
+            slot = (int) ((hash & Long.MAX_VALUE) % mSlotCount);
+            while (mIndex.getInt(slotPosition(slot) + SLOT_LENGTH) > 0)
+                slot = (slot + 1) % mSlotCount;
+            // a reused tombstone was already counted
+            if (mIndex.getInt(slotPosition(slot) + SLOT_LENGTH) == 0) mUsedCount++;
+            setLiveCount(mLiveCount + 1);
+        }
+        final int position = slotPosition(slot);
+        mIndex.putLong(position, hash);
+        mIndex.putLong(position + SLOT_OFFSET, offset);
+        mIndex.putInt(position + SLOT_LENGTH, length);
+        mIndex.putInt(position + SLOT_CRC, crc);
+        mIndex.putLong(position + SLOT_EXPIRATION, expiration);
+    }
+
+    private void remove(int slot) {
+        // keep the probe chains intact
+        mIndex.putInt(slotPosition(slot) + SLOT_LENGTH, TOMBSTONE);
+        setLiveCount(mLiveCount - 1);
+    }
+
+    /**
+     * Returns how many slots hold a live entry or a tombstone.
+     */
+    @VisibleForTesting
+    synchronized int getUsedSlotCount() {
+        return mUsedCount;
+    }
+
+    private void setLiveCount(int count) {
+        mLiveCount = count;
+        mIndex.putInt(HEADER_LIVE_COUNT, count);
+    }
+
+    private void setDataLength(long length) {
+        mDataLength = length;
+        mIndex.putLong(HEADER_DATA_LENGTH, length);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private byte[] read(long offset, int length) throws IOException {
+        if (length <= 0 || offset < 0 || offset + length > mDataLength)
+            throw new IOException("invalid record bounds");
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final FileChannel channel = mDataFile.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("unexpected end of file");
+        }
+        return buffer.array();
+    }
+
+    private void write(long offset, byte[] record) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final FileChannel channel = mDataFile.getChannel();
+        while (buffer.hasRemaining()) channel.write(buffer, offset + buffer.position());
+    }
+
+    private static byte[] encode(String key, SearchResult[] results) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(key);
+        out.writeInt(results.length);
+        for (SearchResult result : results) {
+            writeString(out, result.title);
+            writeString(out, result.content);
+            writeString(out, result.url);
+            writeString(out, result.visibleUrl);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Nullable
+    private static SearchResult[] decode(byte[] record, String key) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        // hash collision
+        if (!key.equals(in.readUTF())) return null;
+        final int count = in.readInt();
+        if (count < 0) throw new IOException("invalid result count");
+        final SearchResult[] results = new SearchResult[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = new SearchResult(readString(in), readString(in), readString(in), readString(in));
+        }
+        return results;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 64-bit FNV-1a hash, never 0.
+     */
+    @VisibleForTesting
+    long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int crc(byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
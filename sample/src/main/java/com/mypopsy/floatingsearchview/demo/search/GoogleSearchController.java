@@ -2,12 +2,14 @@ package com.mypopsy.floatingsearchview.demo.search;
 
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.mypopsy.floatingsearchview.demo.hilt.entrypoint.GoogleSearchControllerEntryPoint;
+import com.mypopsy.widget.DebouncePolicy;
 
 import java.io.InterruptedIOException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -25,18 +27,24 @@ import rx.subjects.PublishSubject;
 
 public class GoogleSearchController implements SearchController {
 
-    private static final int DEFAULT_DEBOUNCE = 700; // milliseconds
-
     private final GoogleSearch mSearch;
+    private final SearchFlights mFlights;
+    private final DebouncePolicy mDebouncePolicy;
     private final @NonNull Scheduler.Worker mWorker;
     private final PublishSubject<String> mQuerySubject = PublishSubject.create();
+    private final SearchMetrics mMetrics = new SearchMetrics();
     private Subscription mSubscription;
     private Listener mListener;
+    // the query whose results are expected, only accessed from the main thread
+    private String mCurrentQuery;
 
     @Inject
-    public GoogleSearchController(@ApplicationContext Context context) {
+    public GoogleSearchController(@ApplicationContext Context context, SearchFlights flights,
+                                  DebouncePolicy debouncePolicy) {
         GoogleSearchControllerEntryPoint entryPoint = EntryPointAccessors.fromApplication(context, GoogleSearchControllerEntryPoint.class);
         mSearch = entryPoint.getGoogleSearch();
+        mFlights = flights;
+        mDebouncePolicy = debouncePolicy;
         mWorker = AndroidSchedulers.mainThread().createWorker();
     }
 
@@ -57,8 +65,28 @@ public class GoogleSearchController implements SearchController {
         mSubscription = null;
     }
 
+    @Override
+    public SearchMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Returns the call for the given query, whose latency tunes the debounce: joiners of the
+     * call are not timed, as they did not wait for a call of their own.
+     */
     private Observable<SearchResult[]> getQueryObservable(String query) {
-        return mSearch.search(query)
+        return Observable.defer(() -> {
+            final long start = SystemClock.uptimeMillis();
+            return request(mSearch, query)
+                    .doOnCompleted(() -> mDebouncePolicy.onResponse(SystemClock.uptimeMillis() - start));
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Returns the results of the given query, synchronously requested on subscription.
+     */
+    static Observable<SearchResult[]> request(GoogleSearch search, String query) {
+        return search.search(query)
                 .flatMap((Func1<Response, Observable<SearchResult[]>>) response -> {
                     if (response.responseData == null)
                         return Observable.error(new SearchException(response.responseDetails));
@@ -67,35 +95,73 @@ public class GoogleSearchController implements SearchController {
                 .retry((integer, throwable) -> throwable instanceof InterruptedIOException);
     }
 
+    /**
+     * Counts the outcome of an actual call into the given metrics: completed, failed, or
+     * cancelled when unsubscribed before terminating (which also cancels the underlying HTTP
+     * call). Applied before the call is shared, so that it is only unsubscribed once all the
+     * searches sharing it left.
+     */
+    static Observable<SearchResult[]> track(final Observable<SearchResult[]> observable,
+                                            final SearchMetrics metrics) {
+        return Observable.defer(() -> {
+            final AtomicBoolean terminated = new AtomicBoolean();
+            metrics.onStarted();
+            return observable
+                    .doOnCompleted(() -> {
+                        if (terminated.compareAndSet(false, true)) metrics.onCompleted();
+                    })
+                    .doOnError(throwable -> {
+                        if (terminated.compareAndSet(false, true)) metrics.onFailed();
+                    })
+                    .doOnUnsubscribe(() -> {
+                        if (terminated.compareAndSet(false, true)) metrics.onCancelled();
+                    });
+        });
+    }
+
     private void ensureSubscribed() {
         if(mSubscription != null && !mSubscription.isUnsubscribed()) return;
+        // queries come debounced and de-duplicated from the search view: switchMap unsubscribes
+        // from the previous query, cancelling its in-flight HTTP call
         mSubscription = mQuerySubject.asObservable()
-                .debounce(DEFAULT_DEBOUNCE, TimeUnit.MILLISECONDS)
-                .distinctUntilChanged()
-                .flatMap((Func1<String, Observable<SearchResult[]>>) query -> {
-                    if(TextUtils.isEmpty(query)) return Observable.just(null);
+                .switchMap((Func1<String, Observable<Void>>) query -> {
+                    if(TextUtils.isEmpty(query)) {
+                        notifyResults(query, null);
+                        return Observable.empty();
+                    }
                     notifyStarted(query);
-                    return getQueryObservable(query)
-                            .onErrorResumeNext((Func1<Throwable, Observable<SearchResult[]>>) throwable -> {
-                                notifyError(throwable);
-                                return Observable.empty();
-                            });
+                    // identical concurrent searches share one call
+                    return mFlights.join(query, () -> track(getQueryObservable(query), mMetrics), mMetrics::onCoalesced)
+                            .doOnNext(results -> notifyResults(query, results))
+                            .doOnError(throwable -> notifyError(query, throwable))
+                            .onErrorResumeNext(Observable.empty())
+                            .ignoreElements()
+                            .cast(Void.class);
                 })
-                .observeOn(Schedulers.immediate())
-//                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(searchResults -> {
-                    if(mListener != null) mListener.onSearchResults(searchResults);
-                }, this::notifyError);
+                .subscribe(ignored -> {}, throwable -> notifyError(mCurrentQuery, throwable));
     }
 
     private void notifyStarted(final String query) {
-        if(mListener == null) return;
-        dispatchOnMainThread(() -> mListener.onSearchStarted(query));
+        dispatchOnMainThread(() -> {
+            mCurrentQuery = query;
+            if(mListener != null) mListener.onSearchStarted(query);
+        });
+    }
+
+    private void notifyResults(final String query, final SearchResult[] results) {
+        dispatchOnMainThread(() -> {
+            // a newer query may have started in the meantime
+            if(!TextUtils.isEmpty(query) && !query.equals(mCurrentQuery)) return;
+            if(TextUtils.isEmpty(query)) mCurrentQuery = null;
+            if(mListener != null) mListener.onSearchResults(results);
+        });
     }
 
-    private void notifyError(final Throwable throwable) {
-        if(mListener == null) return;
-        dispatchOnMainThread(() -> mListener.onSearchError(throwable));
+    private void notifyError(final String query, final Throwable throwable) {
+        dispatchOnMainThread(() -> {
+            if(query != null && !query.equals(mCurrentQuery)) return;
+            if(mListener != null) mListener.onSearchError(throwable);
+        });
     }
 
     private void dispatchOnMainThread(Action0 action) {
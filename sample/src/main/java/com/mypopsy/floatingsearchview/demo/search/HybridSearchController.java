@@ -0,0 +1,198 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Queries a local and a remote {@link SearchController} in parallel, and delivers results
+ * progressively: local results as soon as available, as partial results, then the merge of
+ * both once the remote responds.
+ *
+ * Merged results are de-duplicated and ranked: results suggested by both sources first, then
+ * remote ones, then local ones.
+ */
+public class HybridSearchController implements SearchController {
+
+    private final SearchController mLocal;
+    private final SearchController mRemote;
+    private Listener mListener;
+    private SearchPrefetcher mPrefetcher;
+
+    // the query whose results are expected
+    private String mQuery;
+    private SearchResult[] mLocalResults;
+    // the latest remote results, partial or not
+    private SearchResult[] mRemoteResults;
+    private boolean mRemoteComplete;
+    private boolean mStarted;
+
+    public HybridSearchController(@NonNull SearchController local, @NonNull SearchController remote) {
+        mLocal = local;
+        mRemote = remote;
+        mLocal.setListener(new SourceListener(true));
+        mRemote.setListener(new SourceListener(false));
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the prefetcher speculatively searching the likely continuations of a query once
+     * the user paused on it, i.e. once its remote results arrived.
+     */
+    public void setPrefetcher(@Nullable SearchPrefetcher prefetcher) {
+        if (mPrefetcher != null) mPrefetcher.cancel();
+        mPrefetcher = prefetcher;
+    }
+
+    @Override
+    public void search(String query) {
+        mQuery = SearchResultCache.normalize(query);
+        mLocalResults = null;
+        mRemoteResults = null;
+        mRemoteComplete = false;
+        mStarted = false;
+        // the prefetches the query is heading to are about to be useful
+        if (mPrefetcher != null) mPrefetcher.retain(query);
+        mLocal.search(query);
+        mRemote.search(query);
+    }
+
+    @Override
+    public void cancel() {
+        // prefetches only fill the shared cache: they are left to the next search to retain
+        mLocal.cancel();
+        mRemote.cancel();
+    }
+
+    @Override
+    public SearchMetrics getMetrics() {
+        return mRemote.getMetrics();
+    }
+
+    private void onStarted(String query) {
+        if (mStarted) return;
+        mStarted = true;
+        if (mListener != null) mListener.onSearchStarted(query);
+    }
+
+    private void onLocalResults(String query, SearchResult[] results) {
+        mLocalResults = results;
+        if (mListener == null || results == null || results.length == 0) return;
+        // the local source may be late, e.g. while its corpus is loading
+        if (mRemoteComplete)
+            mListener.onSearchResults(merge(results, mRemoteResults));
+        else
+            mListener.onSearchPartialResults(query, merge(results, mRemoteResults));
+    }
+
+    private void onRemotePartialResults(String query, SearchResult[] results) {
+        mRemoteResults = results;
+        if (mListener != null) mListener.onSearchPartialResults(query, merge(mLocalResults, results));
+    }
+
+    private void onRemoteResults(SearchResult[] results) {
+        mRemoteResults = results;
+        mRemoteComplete = true;
+        if (mListener != null) mListener.onSearchResults(merge(mLocalResults, results));
+        // prefetch calls are counted with the searches of this controller
+        if (mPrefetcher != null) mPrefetcher.prefetch(mQuery, getMetrics());
+    }
+
+    private void onRemoteError(Throwable throwable) {
+        mRemoteComplete = true;
+        if (mListener == null) return;
+        // the local results are better than nothing
+        if (mLocalResults != null && mLocalResults.length > 0)
+            mListener.onSearchResults(mLocalResults);
+        else
+            mListener.onSearchError(throwable);
+    }
+
+    static SearchResult[] merge(SearchResult[] local, SearchResult[] remote) {
+        if (local == null || local.length == 0) return remote;
+        if (remote == null || remote.length == 0) return local;
+
+        final Set<String> localKeys = new HashSet<>();
+        for (SearchResult result : local) localKeys.add(keyOf(result));
+
+        final Map<String, SearchResult> both = new LinkedHashMap<>();
+        final Map<String, SearchResult> merged = new LinkedHashMap<>();
+        for (SearchResult result : remote) {
+            final String key = keyOf(result);
+            if (localKeys.contains(key)) both.put(key, result);
+            else if (!merged.containsKey(key)) merged.put(key, result);
+        }
+        for (SearchResult result : local) {
+            final String key = keyOf(result);
+            if (!both.containsKey(key) && !merged.containsKey(key)) merged.put(key, result);
+        }
+
+        final List<SearchResult> results = new ArrayList<>(both.size() + merged.size());
+        results.addAll(both.values());
+        results.addAll(merged.values());
+        return results.toArray(new SearchResult[0]);
+    }
+
+    private static String keyOf(SearchResult result) {
+        return SearchResultCache.normalize(SearchResultCache.plainText(result.title));
+    }
+
+    private class SourceListener implements Listener {
+
+        private final boolean mIsLocal;
+        // the last query started by this source
+        private String mSourceQuery;
+
+        SourceListener(boolean local) {
+            mIsLocal = local;
+        }
+
+        @Override
+        public void onSearchStarted(String query) {
+            mSourceQuery = SearchResultCache.normalize(query);
+            if (isCurrent()) onStarted(query);
+        }
+
+        @Override
+        public void onSearchResults(SearchResult... results) {
+            // clearing results are not preceded by onSearchStarted()
+            if (TextUtils.isEmpty(mQuery)) {
+                if (!mIsLocal && mListener != null) mListener.onSearchResults(results);
+                return;
+            }
+            if (!isCurrent()) return;
+            if (mIsLocal) onLocalResults(mSourceQuery, results);
+            else onRemoteResults(results);
+        }
+
+        @Override
+        public void onSearchPartialResults(String query, SearchResult... results) {
+            if (!SearchResultCache.normalize(query).equals(mQuery)) return;
+            if (mIsLocal) onLocalResults(query, results);
+            else onRemotePartialResults(query, results);
+        }
+
+        @Override
+        public void onSearchError(Throwable throwable) {
+            if (!isCurrent()) return;
+            if (mIsLocal) onLocalResults(mSourceQuery, null);
+            else onRemoteError(throwable);
+        }
+
+        private boolean isCurrent() {
+            return mSourceQuery != null && mSourceQuery.equals(mQuery);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import androidx.annotation.MainThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+/**
+ * Offline {@link SearchController}, suggesting terms from the {@link SuggestionStore}.
+ *
+ * Lookups run synchronously, once the store is loaded. Each controller belongs to its own
+ * screen: only the store is shared, and it never references the controller once cancelled.
+ */
+public class LocalSearchController implements SearchController {
+
+    private static final String SEARCH_URL = "https://www.google.com/search";
+    private static final int MAX_RESULTS = 8;
+
+    private final SuggestionStore mStore;
+    private final SearchMetrics mMetrics = new SearchMetrics();
+    private final Runnable mReplay = this::replay;
+
+    private String mPendingQuery;
+    private Listener mListener;
+
+    @Inject
+    public LocalSearchController(SuggestionStore store) {
+        mStore = store;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    @MainThread
+    public void search(String query) {
+        final String prefix = SearchResultCache.normalize(query);
+        if (TextUtils.isEmpty(prefix)) {
+            cancel();
+            if (mListener != null) mListener.onSearchResults((SearchResult[]) null);
+            return;
+        }
+        if (!mStore.isLoaded()) {
+            mPendingQuery = query;
+            mStore.runOnLoaded(mReplay);
+            return;
+        }
+
+        mMetrics.onStarted();
+        if (mListener != null) mListener.onSearchStarted(query);
+        final SearchResult[] results = lookup(prefix);
+        mMetrics.onCompleted();
+        if (mListener != null) mListener.onSearchResults(results);
+    }
+
+    @Override
+    public void cancel() {
+        mPendingQuery = null;
+        mStore.removeOnLoaded(mReplay);
+    }
+
+    @Override
+    public SearchMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    private void replay() {
+        final String query = mPendingQuery;
+        mPendingQuery = null;
+        if (query != null) search(query);
+    }
+
+    private SearchResult[] lookup(String prefix) {
+        final List<String> terms = mStore.lookup(prefix, MAX_RESULTS);
+        final List<SearchResult> results = new ArrayList<>(terms.size());
+        for (String term : terms) results.add(toResult(term));
+        return results.toArray(new SearchResult[0]);
+    }
+
+    static SearchResult toResult(String term) {
+        final String url = Uri.parse(SEARCH_URL).buildUpon()
+                .appendQueryParameter("q", term).build().toString();
+        return new SearchResult(TextUtils.htmlEncode(term), null, url, null);
+    }
+}
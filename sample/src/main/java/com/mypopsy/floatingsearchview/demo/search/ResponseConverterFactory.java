@@ -0,0 +1,201 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Parses search {@link Response}s with a streaming {@link JsonReader}, without reflection.
+ *
+ * Results are built as their json is read from the body stream, with no intermediate tree, and
+ * their styled title is prepared right away, still on the network thread. The response is only
+ * delivered once fully parsed. The reader is Gson's, which also runs on the JVM.
+ */
+public class ResponseConverterFactory extends Converter.Factory {
+
+    public static ResponseConverterFactory create() {
+        return new ResponseConverterFactory();
+    }
+
+    private ResponseConverterFactory() {}
+
+    @Nullable
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                            Retrofit retrofit) {
+        return type == Response.class ? ResponseConverter.INSTANCE : null;
+    }
+
+    private static final class ResponseConverter implements Converter<ResponseBody, Response> {
+
+        static final ResponseConverter INSTANCE = new ResponseConverter();
+
+        @Override
+        public Response convert(ResponseBody body) throws IOException {
+            try (JsonReader reader = new JsonReader(body.charStream())) {
+                return readResponse(reader);
+            } catch (IllegalStateException | NumberFormatException e) {
+                // unexpected json structure
+                throw new IOException(e);
+            }
+        }
+    }
+
+    static Response readResponse(JsonReader reader) throws IOException {
+        final Response response = new Response();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (skipNull(reader)) continue;
+            switch (name) {
+                case "responseStatus":
+                    response.responseStatus = reader.nextInt();
+                    break;
+                case "responseDetails":
+                    response.responseDetails = reader.nextString();
+                    break;
+                case "responseData":
+                    response.responseData = readData(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return response;
+    }
+
+    private static Response.Data readData(JsonReader reader) throws IOException {
+        final Response.Data data = new Response.Data();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (skipNull(reader)) continue;
+            switch (name) {
+                case "results":
+                    data.results = readResults(reader);
+                    break;
+                case "cursor":
+                    data.cursor = readCursor(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    private static SearchResult[] readResults(JsonReader reader) throws IOException {
+        final List<SearchResult> results = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (skipNull(reader)) continue;
+            final SearchResult result = readResult(reader);
+            SearchResult.prepare(result);
+            results.add(result);
+        }
+        reader.endArray();
+        return results.toArray(new SearchResult[0]);
+    }
+
+    private static SearchResult readResult(JsonReader reader) throws IOException {
+        String title = null, content = null, url = null, visibleUrl = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (skipNull(reader)) continue;
+            switch (name) {
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "content":
+                    content = reader.nextString();
+                    break;
+                case "url":
+                    url = reader.nextString();
+                    break;
+                case "visibleUrl":
+                    visibleUrl = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new SearchResult(title, content, url, visibleUrl);
+    }
+
+    private static SearchCursor readCursor(JsonReader reader) throws IOException {
+        final SearchCursor cursor = new SearchCursor();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (skipNull(reader)) continue;
+            switch (name) {
+                case "estimatedResultCount":
+                    // sent as a string, which nextLong() accepts
+                    cursor.estimatedResultCount = reader.nextLong();
+                    break;
+                case "moreResultsUrl":
+                    cursor.moreResultsUrl = reader.nextString();
+                    break;
+                case "currentPageIndex":
+                    cursor.currentPageIndex = reader.nextLong();
+                    break;
+                case "pages":
+                    cursor.pages = readPages(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cursor;
+    }
+
+    private static SearchCursor.Page[] readPages(JsonReader reader) throws IOException {
+        final List<SearchCursor.Page> pages = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (skipNull(reader)) continue;
+            final SearchCursor.Page page = new SearchCursor.Page();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (skipNull(reader)) continue;
+                switch (name) {
+                    case "start":
+                        page.start = reader.nextString();
+                        break;
+                    case "label":
+                        page.label = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            pages.add(page);
+        }
+        reader.endArray();
+        return pages.toArray(new SearchCursor.Page[0]);
+    }
+
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NULL) return false;
+        reader.nextNull();
+        return true;
+    }
+}
@@ -9,9 +9,24 @@ public interface SearchController {
         void onSearchStarted(String query);
         @MainThread void onSearchResults(SearchResult ...results);
         @MainThread void onSearchError(Throwable throwable);
+
+        /**
+         * Delivers an intermediate result set for the given query, to be refined by
+         * further partial results and eventually by {@link #onSearchResults}.
+         */
+        @MainThread
+        default void onSearchPartialResults(String query, SearchResult ...results) {
+            onSearchResults(results);
+        }
     }
 
     void setListener(Listener listener);
+
+    /**
+     * Searches for the given query. Starting a new search cancels the in-flight one:
+     * results of a superseded query are never delivered to the {@link Listener}.
+     */
     void search(String query);
     void cancel();
+    SearchMetrics getMetrics();
 }
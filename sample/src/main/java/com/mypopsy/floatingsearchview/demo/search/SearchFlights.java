@@ -0,0 +1,123 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.subjects.PublishSubject;
+
+/**
+ * Process-wide registry of the in-flight searches, keyed by normalized query: concurrent
+ * identical searches, e.g. from several controllers, share a single call whose results are
+ * delivered to each of them.
+ *
+ * A search is registered until its call terminates, and its results are replayed to the
+ * searches that joined it before, however late they subscribe: a call never runs twice. A shared
+ * call is cancelled once all its subscribers unsubscribed before it terminated.
+ */
+@Singleton
+public class SearchFlights {
+
+    private final ConcurrentHashMap<String, Flight> mFlights = new ConcurrentHashMap<>();
+    private final AtomicInteger mJoined = new AtomicInteger();
+
+    @Inject
+    public SearchFlights() {
+    }
+
+    /**
+     * Returns an observable joining the in-flight search of the given query if any, or else
+     * starting a new one created by the given factory, on subscription.
+     *
+     * @param onJoined called when joining an in-flight search.
+     */
+    public Observable<SearchResult[]> join(@NonNull String query,
+                                           @NonNull Func0<Observable<SearchResult[]>> factory,
+                                           @Nullable Action0 onJoined) {
+        final String key = SearchResultCache.normalize(query);
+        return Observable.defer(() -> {
+            while (true) {
+                Flight flight = mFlights.get(key);
+                boolean joined = flight != null;
+                if (flight == null) {
+                    final Flight created = new Flight(key, factory.call());
+                    flight = mFlights.putIfAbsent(key, created);
+                    joined = flight != null;
+                    if (flight == null) flight = created;
+                }
+                if (flight.acquire()) {
+                    if (joined) {
+                        mJoined.incrementAndGet();
+                        if (onJoined != null) onJoined.call();
+                    }
+                    return flight.results.doOnUnsubscribe(flight::release);
+                }
+                // cancelled meanwhile: it is leaving the registry, start over
+                mFlights.remove(key, flight);
+            }
+        });
+    }
+
+    /**
+     * Returns how many searches joined an in-flight one so far.
+     */
+    public int getJoinedCount() {
+        return mJoined.get();
+    }
+
+    /**
+     * Returns how many searches are currently in flight.
+     */
+    public int getInFlightCount() {
+        return mFlights.size();
+    }
+
+    private final class Flight {
+        final String key;
+        final PublishSubject<Void> cancel = PublishSubject.create();
+        final Observable<SearchResult[]> results;
+        // guarded by this
+        int subscribers;
+        boolean terminated;
+        boolean cancelled;
+
+        Flight(String key, Observable<SearchResult[]> call) {
+            this.key = key;
+            // leaves the registry before the terminal event is delivered, and replays it after
+            this.results = call.takeUntil(cancel)
+                    .doOnTerminate(this::land)
+                    .cache();
+        }
+
+        synchronized boolean acquire() {
+            // a terminated flight still replays its results, a cancelled one has none
+            if (cancelled) return false;
+            subscribers++;
+            return true;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--subscribers > 0 || terminated) return;
+                cancelled = true;
+            }
+            mFlights.remove(key, this);
+            cancel.onNext(null);
+        }
+
+        void land() {
+            mFlights.remove(key, this);
+            synchronized (this) {
+                terminated = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe counters describing what happened to the searches of a {@link SearchController}.
+ */
+public class SearchMetrics {
+
+    private final AtomicInteger mStarted = new AtomicInteger();
+    private final AtomicInteger mCompleted = new AtomicInteger();
+    private final AtomicInteger mCancelled = new AtomicInteger();
+    private final AtomicInteger mFailed = new AtomicInteger();
+    private final AtomicInteger mCoalesced = new AtomicInteger();
+
+    void onStarted() {
+        mStarted.incrementAndGet();
+    }
+
+    void onCompleted() {
+        mCompleted.incrementAndGet();
+    }
+
+    void onCancelled() {
+        mCancelled.incrementAndGet();
+    }
+
+    void onFailed() {
+        mFailed.incrementAndGet();
+    }
+
+    void onCoalesced() {
+        mCoalesced.incrementAndGet();
+    }
+
+    /**
+     * Number of requests actually issued.
+     */
+    public int getStartedCount() {
+        return mStarted.get();
+    }
+
+    public int getCompletedCount() {
+        return mCompleted.get();
+    }
+
+    /**
+     * Number of in-flight requests cancelled because superseded by a newer query.
+     */
+    public int getCancelledCount() {
+        return mCancelled.get();
+    }
+
+    public int getFailedCount() {
+        return mFailed.get();
+    }
+
+    /**
+     * Number of requests which joined an identical in-flight request, instead of reaching
+     * the network.
+     */
+    public int getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchMetrics{" +
+                "started=" + getStartedCount() +
+                ", completed=" + getCompletedCount() +
+                ", cancelled=" + getCancelledCount() +
+                ", failed=" + getFailedCount() +
+                ", coalesced=" + getCoalescedCount() +
+                '}';
+    }
+}
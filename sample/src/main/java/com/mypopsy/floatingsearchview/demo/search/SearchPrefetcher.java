@@ -0,0 +1,230 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.hilt.android.qualifiers.ApplicationContext;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Speculatively searches the most likely continuations of a query, as predicted from the local
+ * history and corpus, and stores their results into the {@link SearchResultCache}: when the user
+ * goes on typing one of them, its results are served right away.
+ *
+ * Prefetches run on low priority threads with bounded concurrency, only on unmetered networks
+ * and while {@link #start() started}, i.e. while a search screen is visible. They are kept while
+ * the user types towards them, and cancelled by {@link #retain(String)} once the query diverges.
+ * They share their call with any identical search through {@link SearchFlights}, and are counted
+ * in the {@link SearchMetrics} of the controller requesting them.
+ */
+@Singleton
+public class SearchPrefetcher {
+
+    private static final int MAX_PREDICTIONS = 3;
+    private static final int MAX_CONCURRENCY = 2;
+
+    private final ConnectivityManager mConnectivityManager;
+    private final GoogleSearch mSearch;
+    private final SuggestionStore mSuggestions;
+    private final SearchResultCache mCache;
+    private final SearchFlights mFlights;
+    private final Scheduler mScheduler =
+            Schedulers.from(Executors.newFixedThreadPool(MAX_CONCURRENCY, new PrefetchThreadFactory()));
+    private final AtomicInteger mPrefetched = new AtomicInteger();
+    // the networks currently known to be unmetered, updated by the connectivity callbacks
+    private final Set<Network> mUnmeteredNetworks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // by term, only accessed from the main thread
+    private final Map<String, Subscription> mPrefetches = new HashMap<>();
+    // the prefix the prefetches must start with, only accessed from the main thread
+    private String mPrefix = "";
+    // the results are cached on the main thread, like the searches themselves
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ConnectivityManager.NetworkCallback mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            // capabilities only follow availability from API 26
+            final NetworkCapabilities capabilities = mConnectivityManager.getNetworkCapabilities(network);
+            if (capabilities != null) onCapabilitiesChanged(network, capabilities);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED))
+                mUnmeteredNetworks.add(network);
+            else
+                mUnmeteredNetworks.remove(network);
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            mUnmeteredNetworks.remove(network);
+        }
+    };
+    // how many screens started this prefetcher, only accessed from the main thread
+    private int mStartCount;
+
+    @Inject
+    public SearchPrefetcher(@ApplicationContext Context context, GoogleSearch search,
+                            SuggestionStore suggestions, SearchResultCache cache,
+                            SearchFlights flights) {
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mSearch = search;
+        mSuggestions = suggestions;
+        mCache = cache;
+        mFlights = flights;
+    }
+
+    /**
+     * Starts tracking the network, which prefetches depend on. Calls are counted: the network
+     * is tracked until each of them was matched by {@link #stop()}.
+     */
+    @MainThread
+    public void start() {
+        if (mStartCount++ == 0 && mConnectivityManager != null) registerNetworkCallback();
+    }
+
+    /**
+     * Stops tracking the network once every {@link #start()} was matched, cancelling the
+     * in-flight prefetches.
+     */
+    @MainThread
+    public void stop() {
+        if (mStartCount == 0 || --mStartCount > 0) return;
+        if (mConnectivityManager != null) mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        mUnmeteredNetworks.clear();
+        cancel();
+    }
+
+    /**
+     * Prefetches the predicted continuations of the given query which are neither cached, in
+     * memory or on disk, nor already prefetching, cancelling the prefetches it diverged from.
+     *
+     * @param metrics counts the prefetch calls, or null.
+     */
+    @MainThread
+    public void prefetch(String query, @Nullable SearchMetrics metrics) {
+        retain(query);
+        if (mUnmeteredNetworks.isEmpty()) return;
+
+        for (String term : mSuggestions.predict(query, MAX_PREDICTIONS)) {
+            if (mPrefetches.containsKey(term)) continue;
+            mCache.load(term, (key, cached) -> {
+                if (cached == null) start(term, metrics);
+            });
+        }
+    }
+
+    /**
+     * Prefetches the given term after a cache miss, unless the query diverged from it, this
+     * prefetcher stopped or the network became metered meanwhile.
+     */
+    @MainThread
+    private void start(String term, @Nullable SearchMetrics metrics) {
+        if (mStartCount == 0 || mUnmeteredNetworks.isEmpty() || mPrefetches.containsKey(term)
+                || mPrefix.isEmpty() || !term.startsWith(mPrefix))
+            return;
+        final Observable<SearchResult[]> flight = mFlights.join(term, () -> {
+            final Observable<SearchResult[]> call =
+                    GoogleSearchController.request(mSearch, term).subscribeOn(mScheduler);
+            // counted like the searches, as a flight of its own
+            return metrics != null ? GoogleSearchController.track(call, metrics) : call;
+        }, null);
+        mPrefetches.put(term, flight.subscribe(results -> mMainHandler.post(() -> {
+            mCache.put(term, results);
+            mPrefetched.incrementAndGet();
+        }), throwable -> {
+            // a failed prediction is not worth reporting
+        }));
+    }
+
+    /**
+     * Cancels the in-flight prefetches whose term does not start with the given query, unless
+     * shared with an actual search: the others may still be typed.
+     */
+    @MainThread
+    public void retain(String query) {
+        final String prefix = SearchResultCache.normalize(query);
+        mPrefix = prefix;
+        final Iterator<Map.Entry<String, Subscription>> iterator = mPrefetches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Subscription> entry = iterator.next();
+            if (entry.getValue().isUnsubscribed()) {
+                iterator.remove();
+            } else if (prefix.isEmpty() || !entry.getKey().startsWith(prefix)) {
+                entry.getValue().unsubscribe();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Cancels all the in-flight prefetches, unless shared with an actual search.
+     */
+    @MainThread
+    public void cancel() {
+        mPrefix = "";
+        for (Subscription subscription : mPrefetches.values()) subscription.unsubscribe();
+        mPrefetches.clear();
+    }
+
+    /**
+     * Returns how many predicted queries were prefetched so far.
+     */
+    public int getPrefetchedCount() {
+        return mPrefetched.get();
+    }
+
+    /**
+     * Tracks whether the network is unmetered, rather than querying it on each prefetch.
+     * Metered networks also cover the data saver, which only restricts them.
+     */
+    private void registerNetworkCallback() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // the network searches actually go through
+            mConnectivityManager.registerDefaultNetworkCallback(mNetworkCallback);
+        } else {
+            mConnectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build(), mNetworkCallback);
+        }
+    }
+
+    private static final class PrefetchThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "search-prefetch-" + mCount.incrementAndGet());
+            // idle prefetch threads must not keep the process alive
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
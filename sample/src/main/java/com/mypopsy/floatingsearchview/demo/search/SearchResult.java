@@ -1,11 +1,19 @@
 package com.mypopsy.floatingsearchview.demo.search;
 
+import android.text.Html;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.WorkerThread;
+
 public class SearchResult {
     public String visibleUrl;
     public String url;
     public String title;
     public String content;
 
+    // the styled title, lazily parsed from the html title
+    private transient volatile CharSequence styledTitle;
+
 
     public SearchResult(String title) {
         this(title, null);
@@ -25,4 +33,32 @@ public class SearchResult {
         this.url = url;
         this.visibleUrl = visibleUrl;
     }
+
+    /**
+     * Returns the title with its html markup applied, parsed once then cached.
+     */
+    @AnyThread
+    public CharSequence getStyledTitle() {
+        CharSequence styled = styledTitle;
+        if (styled == null) {
+            styled = hasMarkup(title) ? Html.fromHtml(title) : (title != null ? title : "");
+            styledTitle = styled;
+        }
+        return styled;
+    }
+
+    /**
+     * Parses the styled title ahead of binding, typically where the result is produced.
+     */
+    @WorkerThread
+    public static void prepare(SearchResult... results) {
+        if (results == null) return;
+        for (SearchResult result : results) {
+            if (result != null) result.getStyledTitle();
+        }
+    }
+
+    private static boolean hasMarkup(String text) {
+        return text != null && (text.indexOf('<') >= 0 || text.indexOf('&') >= 0);
+    }
 }
@@ -0,0 +1,246 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded in-memory cache of search results, keyed by normalized query.
+ *
+ * Entries expire after a time-to-live, and the cache size is accounted in (estimated) bytes.
+ * Results of a cached prefix can be reused, filtered locally, while a longer query is in flight.
+ * An optional {@link DiskSearchCache} can back the memory cache across process restarts: it is
+ * only accessed from its executor, and {@link #load looked up} asynchronously.
+ */
+public class SearchResultCache {
+
+    public interface Callback {
+        /**
+         * Called with the results cached for the query, or null if missing or expired.
+         */
+        @MainThread
+        void onLoaded(@NonNull String query, @Nullable SearchResult[] results);
+    }
+
+    private static final String TAG = SearchResultCache.class.getSimpleName();
+
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+
+    // rough memory footprint of the objects, in bytes
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final long mTtl;
+    private final LruCache<String, Entry> mCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private DiskSearchCache mDiskCache;
+    private Executor mDiskExecutor;
+
+    /**
+     * @param maxSizeBytes the maximum (estimated) size of the cached results
+     * @param ttlMillis how long results remain valid
+     */
+    public SearchResultCache(int maxSizeBytes, long ttlMillis) {
+        mTtl = ttlMillis;
+        mCache = new LruCache<String, Entry>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.size;
+            }
+        };
+    }
+
+    /**
+     * Backs this cache with a disk cache, opened, read and written on the given executor.
+     */
+    public void setDiskCache(@Nullable final DiskSearchCache diskCache, @Nullable Executor executor) {
+        if (diskCache != null && executor == null) throw new IllegalArgumentException("executor required");
+        mDiskCache = diskCache;
+        mDiskExecutor = executor;
+        if (diskCache == null) return;
+        executor.execute(() -> {
+            try {
+                diskCache.open();
+            } catch (IOException e) {
+                Log.e(TAG, "unable to open disk cache", e);
+            }
+        });
+    }
+
+    /**
+     * Normalizes a query so that equivalent queries share the same key.
+     */
+    @NonNull
+    public static String normalize(@Nullable String query) {
+        if (query == null) return "";
+        return WHITESPACES.matcher(query.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    /**
+     * Returns the results cached in memory for this exact query, or null if missing or expired.
+     *
+     * @see #load(String, Callback)
+     */
+    @Nullable
+    public SearchResult[] get(@Nullable String query) {
+        Entry entry = getEntry(normalize(query));
+        return entry != null ? entry.results : null;
+    }
+
+    /**
+     * Looks the given query up in memory, then on disk, and delivers its results on the main
+     * thread. Disk hits are promoted to memory. Without a disk cache, the callback is invoked
+     * right away.
+     */
+    @MainThread
+    public void load(@Nullable String query, @NonNull final Callback callback) {
+        final String key = normalize(query);
+        final Entry entry = getEntry(key);
+        final DiskSearchCache diskCache = mDiskCache;
+        if (entry != null || diskCache == null || key.isEmpty()) {
+            callback.onLoaded(key, entry != null ? entry.results : null);
+            return;
+        }
+        mDiskExecutor.execute(() -> {
+            final Entry diskEntry = getDiskEntry(diskCache, key);
+            mMainHandler.post(() -> callback.onLoaded(key, diskEntry != null ? diskEntry.results : null));
+        });
+    }
+
+    /**
+     * Returns the results cached in memory for the longest prefix of this query, filtered to the
+     * ones matching the query, or null if no prefix is cached.
+     */
+    @Nullable
+    public SearchResult[] getByPrefix(@Nullable String query) {
+        final String key = normalize(query);
+        for (int end = key.length() - 1; end > 0; end--) {
+            Entry entry = getEntry(key.substring(0, end));
+            if (entry != null) return filter(entry.results, key);
+        }
+        return null;
+    }
+
+    public void put(@Nullable String query, @Nullable SearchResult[] results) {
+        final String key = normalize(query);
+        if (key.isEmpty() || results == null) return;
+        mCache.put(key, new Entry(results, SystemClock.elapsedRealtime() + mTtl,
+                sizeOf(key) + sizeOf(results)));
+        final DiskSearchCache diskCache = mDiskCache;
+        if (diskCache != null) {
+            final long expiration = System.currentTimeMillis() + mTtl;
+            mDiskExecutor.execute(() -> diskCache.put(key, results, expiration));
+        }
+    }
+
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * Returns the (estimated) size of the cached results, in bytes.
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    @Nullable
+    private Entry getEntry(String key) {
+        Entry entry = mCache.get(key);
+        if (entry == null) return null;
+        if (entry.expiration < SystemClock.elapsedRealtime()) {
+            mCache.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    @Nullable
+    @WorkerThread
+    private Entry getDiskEntry(DiskSearchCache diskCache, String key) {
+        final long now = System.currentTimeMillis();
+        final long expiration = diskCache.getExpiration(key);
+        if (expiration < now) return null;
+        final SearchResult[] results = diskCache.get(key, now);
+        if (results == null) return null;
+        // promote to memory, with the remaining time-to-live
+        final Entry entry = new Entry(results, SystemClock.elapsedRealtime() + expiration - now,
+                sizeOf(key) + sizeOf(results));
+        mCache.put(key, entry);
+        return entry;
+    }
+
+    private static SearchResult[] filter(SearchResult[] results, String key) {
+        final String[] tokens = key.split(" ");
+        final List<SearchResult> filtered = new ArrayList<>(results.length);
+        for (SearchResult result : results) {
+            if (matches(result, tokens)) filtered.add(result);
+        }
+        return filtered.toArray(new SearchResult[0]);
+    }
+
+    private static boolean matches(SearchResult result, String[] tokens) {
+        final String text = (plainText(result.title) + ' ' + plainText(result.content) + ' '
+                + result.url).toLowerCase(Locale.ROOT);
+        for (String token : tokens) {
+            if (!text.contains(token)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Strips the markup of a result title or content.
+     */
+    static String plainText(String html) {
+        return html == null ? "" : TAGS.matcher(html).replaceAll("");
+    }
+
+    private static int sizeOf(String string) {
+        return string == null ? 0 : STRING_OVERHEAD + 2 * string.length();
+    }
+
+    private static int sizeOf(SearchResult[] results) {
+        int size = OBJECT_OVERHEAD + 4 * results.length;
+        for (SearchResult result : results) {
+            if (result == null) continue;
+            size += OBJECT_OVERHEAD + sizeOf(result.title) + sizeOf(result.content)
+                    + sizeOf(result.url) + sizeOf(result.visibleUrl);
+        }
+        return size;
+    }
+
+    private static class Entry {
+        final SearchResult[] results;
+        final long expiration;
+        final int size;
+
+        Entry(SearchResult[] results, long expiration, int size) {
+            this.results = results;
+            this.expiration = expiration;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.hilt.android.qualifiers.ApplicationContext;
+
+/**
+ * Offline suggestions, from a corpus asset and the user's history, shared by the application.
+ *
+ * The corpus is loaded lazily into a {@link SuggestionTrie} on a background thread, when
+ * {@link #preload()} is called or a lookup waits for it; lookups then run synchronously. The
+ * history is persisted to a file, loaded along with the corpus and saved in the background.
+ *
+ * @see LocalSearchController
+ */
+@Singleton
+public class SuggestionStore {
+
+    private static final String TAG = SuggestionStore.class.getSimpleName();
+
+    private static final String CORPUS_ASSET = "suggestions.txt";
+    private static final String HISTORY_FILE = "search_history.txt";
+    private static final int MAX_HISTORY = 100;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // most recent last, only accessed from the main thread
+    private final LinkedHashMap<String, Integer> mHistory =
+            new LinkedHashMap<String, Integer>(16, .75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_HISTORY;
+                }
+            };
+
+    // only accessed from the executor, which also resolves its (disk accessing) location
+    private AtomicFile mHistoryFile;
+    private volatile SuggestionTrie mTrie;
+    private boolean mLoading;
+    // whether the persisted history was merged, before which it must not be overwritten
+    private boolean mHistoryLoaded;
+    // run once loaded, only accessed from the main thread
+    private final List<Runnable> mOnLoaded = new ArrayList<>();
+
+    @Inject
+    public SuggestionStore(@ApplicationContext Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public boolean isLoaded() {
+        return mTrie != null;
+    }
+
+    /**
+     * Starts loading the corpus and history in the background, if not already loaded.
+     */
+    @MainThread
+    public void preload() {
+        if (mTrie != null || mLoading) return;
+        mLoading = true;
+        mExecutor.execute(() -> {
+            final Map<String, Integer> history = loadHistory();
+            final SuggestionTrie trie = load();
+            mHandler.post(() -> {
+                mergeHistory(history);
+                mTrie = trie;
+                mLoading = false;
+                final List<Runnable> callbacks = new ArrayList<>(mOnLoaded);
+                mOnLoaded.clear();
+                for (Runnable callback : callbacks) callback.run();
+            });
+        });
+    }
+
+    /**
+     * Runs the given callback once loaded, right away if already loaded, starting the load
+     * if needed.
+     *
+     * @see #removeOnLoaded(Runnable)
+     */
+    @MainThread
+    public void runOnLoaded(@NonNull Runnable callback) {
+        if (mTrie != null) {
+            callback.run();
+            return;
+        }
+        if (!mOnLoaded.contains(callback)) mOnLoaded.add(callback);
+        preload();
+    }
+
+    @MainThread
+    public void removeOnLoaded(@NonNull Runnable callback) {
+        mOnLoaded.remove(callback);
+    }
+
+    /**
+     * Records a query the user actually searched for, suggested first from now on.
+     */
+    @MainThread
+    public void addToHistory(String query) {
+        final String term = SearchResultCache.normalize(query);
+        if (term.isEmpty()) return;
+        Integer count = mHistory.get(term);
+        mHistory.put(term, count == null ? 1 : count + 1);
+        saveHistory();
+    }
+
+    @MainThread
+    private void mergeHistory(Map<String, Integer> persisted) {
+        // the queries searched while loading are the most recent ones
+        final Map<String, Integer> recent = new LinkedHashMap<>(mHistory);
+        mHistory.clear();
+        mHistory.putAll(persisted);
+        for (Map.Entry<String, Integer> entry : recent.entrySet()) {
+            final Integer count = mHistory.get(entry.getKey());
+            mHistory.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+        }
+        mHistoryLoaded = true;
+        if (!recent.isEmpty()) saveHistory();
+    }
+
+    @MainThread
+    private void saveHistory() {
+        if (!mHistoryLoaded) return;
+        final Map<String, Integer> snapshot = new LinkedHashMap<>(mHistory);
+        mExecutor.execute(() -> writeHistory(snapshot));
+    }
+
+    /**
+     * Predicts the most likely continuations of the given query, history first.
+     *
+     * @return the predicted terms, best first, excluding the query itself; empty while the
+     * corpus is not loaded.
+     */
+    @MainThread
+    public List<String> predict(String query, int max) {
+        final String prefix = SearchResultCache.normalize(query);
+        if (mTrie == null || TextUtils.isEmpty(prefix)) return Collections.emptyList();
+        final List<String> terms = lookup(prefix, max + 1);
+        terms.remove(prefix);
+        return terms.size() > max ? terms.subList(0, max) : terms;
+    }
+
+    /**
+     * Returns the best terms starting with the given normalized prefix, history first.
+     *
+     * @return the terms, best first; empty while not loaded.
+     */
+    @MainThread
+    public List<String> lookup(String prefix, int max) {
+        if (mTrie == null) return new ArrayList<>(0);
+        final List<String> terms = new ArrayList<>(max);
+
+        // the history is small: a scan is cheap enough, and it always ranks above the corpus
+        final List<Map.Entry<String, Integer>> history = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : mHistory.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) history.add(entry);
+        }
+        Collections.sort(history, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<String, Integer> entry : history) {
+            if (terms.size() >= max) break;
+            terms.add(entry.getKey());
+        }
+
+        mTrie.find(prefix, max, (term, score) -> {
+            if (terms.size() < max && !terms.contains(term)) terms.add(term);
+        });
+        return terms;
+    }
+
+    /**
+     * Reads the persisted history, least recently searched first: one term and its search
+     * count per line, separated by a tab.
+     */
+    @WorkerThread
+    private Map<String, Integer> loadHistory() {
+        final Map<String, Integer> history = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getHistoryFile().openRead(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int tab = line.lastIndexOf('\t');
+                if (tab <= 0) continue;
+                try {
+                    history.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "invalid history line: " + line);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // nothing searched yet
+        } catch (IOException e) {
+            Log.e(TAG, "unable to load history", e);
+        }
+        return history;
+    }
+
+    @WorkerThread
+    private void writeHistory(Map<String, Integer> history) {
+        FileOutputStream out = null;
+        try {
+            out = getHistoryFile().startWrite();
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            // normalized terms hold no tab nor line break
+            for (Map.Entry<String, Integer> entry : history.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(String.valueOf(entry.getValue()));
+                writer.write('\n');
+            }
+            writer.flush();
+            mHistoryFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "unable to save history", e);
+            if (out != null) mHistoryFile.failWrite(out);
+        }
+    }
+
+    @WorkerThread
+    private AtomicFile getHistoryFile() {
+        if (mHistoryFile == null)
+            mHistoryFile = new AtomicFile(new File(mContext.getFilesDir(), HISTORY_FILE));
+        return mHistoryFile;
+    }
+
+    @WorkerThread
+    private SuggestionTrie load() {
+        final SuggestionTrie.Builder builder = new SuggestionTrie.Builder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                mContext.getAssets().open(CORPUS_ASSET), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                final int tab = line.indexOf('\t');
+                try {
+                    final String term = SearchResultCache.normalize(tab < 0 ? line : line.substring(0, tab));
+                    final int score = tab < 0 ? 0 : Integer.parseInt(line.substring(tab + 1).trim());
+                    builder.add(term, score);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "invalid corpus line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "unable to load " + CORPUS_ASSET, e);
+        }
+        return builder.build();
+    }
+}
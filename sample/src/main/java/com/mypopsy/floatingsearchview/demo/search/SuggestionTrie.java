@@ -0,0 +1,221 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Immutable compressed (radix) trie of scored terms, answering top-k prefix queries.
+ *
+ * Nodes are stored in flat arrays, edge labels in a single shared char array, and every node
+ * knows the best score of its subtree: a lookup walks down the prefix then performs a best-first
+ * search, visiting only the nodes that may hold one of the top k terms.
+ */
+public class SuggestionTrie {
+
+    public interface Visitor {
+        void onTerm(@NonNull String term, int score);
+    }
+
+    private static final int NO_NODE = -1;
+    private static final int NO_SCORE = Integer.MIN_VALUE;
+
+    private final char[] mLabels;
+    private final int[] mLabelStart;
+    private final int[] mLabelLength;
+    private final int[] mFirstChild;
+    private final int[] mNextSibling;
+    private final int[] mScore;     // NO_SCORE for non terminal nodes
+    private final int[] mMaxScore;  // best score of the subtree
+
+    private SuggestionTrie(char[] labels, int[] labelStart, int[] labelLength, int[] firstChild,
+                           int[] nextSibling, int[] score, int[] maxScore) {
+        mLabels = labels;
+        mLabelStart = labelStart;
+        mLabelLength = labelLength;
+        mFirstChild = firstChild;
+        mNextSibling = nextSibling;
+        mScore = score;
+        mMaxScore = maxScore;
+    }
+
+    public int getNodeCount() {
+        return mScore.length;
+    }
+
+    /**
+     * Visits the (at most) k best scored terms starting with the given prefix, best first.
+     */
+    public void find(@NonNull String prefix, int k, @NonNull Visitor visitor) {
+        if (k <= 0) return;
+
+        // walk down the prefix, which may end in the middle of an edge label
+        int node = 0;
+        int matched = 0;
+        final StringBuilder path = new StringBuilder(prefix.length() + 16);
+        while (matched < prefix.length()) {
+            int child = findChild(node, prefix.charAt(matched));
+            if (child == NO_NODE) return;
+            final int start = mLabelStart[child];
+            final int length = mLabelLength[child];
+            for (int i = 0; i < length && matched < prefix.length(); i++, matched++) {
+                if (mLabels[start + i] != prefix.charAt(matched)) return;
+            }
+            path.append(mLabels, start, length);
+            node = child;
+        }
+
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(node, mMaxScore[node], path.toString(), false));
+        int found = 0;
+        while (found < k && !queue.isEmpty()) {
+            final Candidate candidate = queue.poll();
+            if (candidate.term) {
+                visitor.onTerm(candidate.path, candidate.score);
+                found++;
+                continue;
+            }
+            final int n = candidate.node;
+            if (mScore[n] != NO_SCORE)
+                queue.add(new Candidate(n, mScore[n], candidate.path, true));
+            for (int child = mFirstChild[n]; child != NO_NODE; child = mNextSibling[child]) {
+                queue.add(new Candidate(child, mMaxScore[child], candidate.path
+                        + new String(mLabels, mLabelStart[child], mLabelLength[child]), false));
+            }
+        }
+    }
+
+    private int findChild(int node, char c) {
+        for (int child = mFirstChild[node]; child != NO_NODE; child = mNextSibling[child]) {
+            if (mLabels[mLabelStart[child]] == c) return child;
+        }
+        return NO_NODE;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final int node;
+        final int score;
+        final String path;
+        final boolean term;
+
+        Candidate(int node, int score, String path, boolean term) {
+            this.node = node;
+            this.score = score;
+            this.path = path;
+            this.term = term;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            // best scores first, terms before the subtrees bounded by the same score
+            if (score != other.score) return Integer.compare(other.score, score);
+            return Boolean.compare(other.term, term);
+        }
+    }
+
+    /**
+     * Accumulates terms, then builds the compact trie.
+     */
+    public static class Builder {
+
+        private final Node mRoot = new Node();
+        private int mNodeCount = 1;
+
+        /**
+         * Adds a term, keeping the best score if already added.
+         */
+        public Builder add(@NonNull String term, int score) {
+            if (term.isEmpty()) return this;
+            Node node = mRoot;
+            for (int i = 0; i < term.length(); i++) {
+                final char c = term.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                    mNodeCount++;
+                }
+                node = child;
+            }
+            node.score = Math.max(node.score, score);
+            return this;
+        }
+
+        public SuggestionTrie build() {
+            final List<CompressedNode> nodes = new ArrayList<>(mNodeCount);
+            final StringBuilder labels = new StringBuilder(mNodeCount);
+            compress(mRoot, "", labels, nodes);
+
+            final int count = nodes.size();
+            final int[] labelStart = new int[count];
+            final int[] labelLength = new int[count];
+            final int[] firstChild = new int[count];
+            final int[] nextSibling = new int[count];
+            final int[] score = new int[count];
+            final int[] maxScore = new int[count];
+            for (int i = 0; i < count; i++) {
+                final CompressedNode node = nodes.get(i);
+                labelStart[i] = node.labelStart;
+                labelLength[i] = node.labelLength;
+                firstChild[i] = node.firstChild;
+                nextSibling[i] = node.nextSibling;
+                score[i] = node.score;
+                maxScore[i] = node.maxScore;
+            }
+            final char[] chars = new char[labels.length()];
+            labels.getChars(0, chars.length, chars, 0);
+            return new SuggestionTrie(chars, labelStart, labelLength, firstChild, nextSibling,
+                    score, maxScore);
+        }
+
+        /**
+         * Flattens the subtree, merging chains of single-child non terminal nodes into one edge.
+         *
+         * @return the index of the compressed node.
+         */
+        private static int compress(Node node, String label, StringBuilder labels,
+                                    List<CompressedNode> nodes) {
+            while (node.children.size() == 1 && node.score == NO_SCORE && !label.isEmpty()) {
+                final char c = node.children.firstKey();
+                label += c;
+                node = node.children.get(c);
+            }
+
+            final int index = nodes.size();
+            final CompressedNode compressed = new CompressedNode();
+            compressed.labelStart = labels.length();
+            compressed.labelLength = label.length();
+            compressed.score = node.score;
+            compressed.maxScore = node.score;
+            labels.append(label);
+            nodes.add(compressed);
+
+            int previous = NO_NODE;
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                final int child = compress(entry.getValue(), String.valueOf(entry.getKey()),
+                        labels, nodes);
+                if (previous == NO_NODE) compressed.firstChild = child;
+                else nodes.get(previous).nextSibling = child;
+                previous = child;
+                compressed.maxScore = Math.max(compressed.maxScore, nodes.get(child).maxScore);
+            }
+            return index;
+        }
+
+        private static class Node {
+            final TreeMap<Character, Node> children = new TreeMap<>();
+            int score = NO_SCORE;
+        }
+
+        private static class CompressedNode {
+            int labelStart, labelLength;
+            int firstChild = NO_NODE;
+            int nextSibling = NO_NODE;
+            int score, maxScore;
+        }
+    }
+}
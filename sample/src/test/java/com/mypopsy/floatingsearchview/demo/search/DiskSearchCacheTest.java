@@ -0,0 +1,258 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskSearchCacheTest {
+
+    private static final long MAX_DATA_SIZE = 64 * 1024;
+    private static final int SLOT_COUNT = 16;
+    // compactions drop the entries expired by the wall clock
+    private static final long NOW = System.currentTimeMillis();
+    private static final long LATER = NOW + 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private DiskSearchCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("search");
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT));
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        mCache.put("foo", results("foo", 3), LATER);
+
+        assertResults("foo", 3, mCache.get("foo", NOW));
+        assertEquals(LATER, mCache.getExpiration("foo"));
+        assertNull(mCache.get("bar", NOW));
+        assertEquals(-1, mCache.getExpiration("bar"));
+
+        // survives a restart
+        mCache.close();
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT));
+        assertResults("foo", 3, mCache.get("foo", NOW));
+    }
+
+    @Test
+    public void roundTripOfNullFields() {
+        mCache.put("foo", new SearchResult[]{new SearchResult("title", null, null, null)}, LATER);
+
+        final SearchResult[] results = mCache.get("foo", NOW);
+        assertNotNull(results);
+        assertEquals(1, results.length);
+        assertEquals("title", results[0].title);
+        assertNull(results[0].content);
+        assertNull(results[0].url);
+        assertNull(results[0].visibleUrl);
+    }
+
+    @Test
+    public void expiredEntriesAreMissing() {
+        mCache.put("foo", results("foo", 1), NOW - 1);
+
+        assertNull(mCache.get("foo", NOW));
+        assertEquals(-1, mCache.getExpiration("foo"));
+    }
+
+    @Test
+    public void hashCollisionNeverReturnsAnotherQuery() throws IOException {
+        mCache.close();
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT) {
+            @Override
+            long hash(String key) {
+                return 42;
+            }
+        });
+
+        mCache.put("foo", results("foo", 1), LATER);
+        mCache.put("bar", results("bar", 2), LATER);
+
+        // the second query took the slot of the first one
+        assertNull(mCache.get("foo", NOW));
+        assertResults("bar", 2, mCache.get("bar", NOW));
+    }
+
+    @Test
+    public void lookupsProbePastTombstones() throws IOException {
+        mCache.close();
+        // all the keys land on the same slot, with distinct hashes
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT) {
+            @Override
+            long hash(String key) {
+                return 1 + (long) SLOT_COUNT * key.length();
+            }
+        });
+
+        mCache.put("a", results("a", 1), LATER);
+        mCache.put("bb", results("bb", 1), NOW - 1);
+        mCache.put("ccc", results("ccc", 1), LATER);
+
+        // expiring the middle of the probe chain leaves a tombstone
+        assertNull(mCache.get("bb", NOW));
+        assertResults("ccc", 1, mCache.get("ccc", NOW));
+
+        // which is reused, without breaking the chain
+        mCache.put("dddd", results("dddd", 2), LATER);
+        assertResults("a", 1, mCache.get("a", NOW));
+        assertResults("ccc", 1, mCache.get("ccc", NOW));
+        assertResults("dddd", 2, mCache.get("dddd", NOW));
+    }
+
+    @Test
+    public void corruptedHeaderResetsTheCache() throws IOException {
+        mCache.put("foo", results("foo", 1), LATER);
+        mCache.close();
+
+        try (RandomAccessFile index = new RandomAccessFile(new File(mDirectory, "search.idx"), "rw")) {
+            index.writeInt(0xdeadbeef);
+        }
+
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT));
+        assertTrue(mCache.isOpen());
+        assertNull(mCache.get("foo", NOW));
+
+        mCache.put("bar", results("bar", 1), LATER);
+        assertResults("bar", 1, mCache.get("bar", NOW));
+    }
+
+    @Test
+    public void resizedIndexResetsTheCache() throws IOException {
+        mCache.put("foo", results("foo", 1), LATER);
+        mCache.close();
+
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT * 2));
+        assertTrue(mCache.isOpen());
+        assertNull(mCache.get("foo", NOW));
+    }
+
+    @Test
+    public void truncatedDataResetsTheCache() throws IOException {
+        mCache.put("foo", results("foo", 1), LATER);
+        mCache.close();
+
+        try (RandomAccessFile data = new RandomAccessFile(new File(mDirectory, "search.dat"), "rw")) {
+            data.setLength(data.length() / 2);
+        }
+
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT));
+        assertTrue(mCache.isOpen());
+        assertNull(mCache.get("foo", NOW));
+    }
+
+    @Test
+    public void corruptedRecordIsDropped() throws IOException {
+        mCache.put("foo", results("foo", 1), LATER);
+        mCache.put("bar", results("bar", 1), LATER);
+        mCache.close();
+
+        // the first record starts the data file
+        try (RandomAccessFile data = new RandomAccessFile(new File(mDirectory, "search.dat"), "rw")) {
+            data.seek(4);
+            final int value = data.read();
+            data.seek(4);
+            data.write(value ^ 0xff);
+        }
+
+        mCache = open(new DiskSearchCache(mDirectory, MAX_DATA_SIZE, SLOT_COUNT));
+        assertNull(mCache.get("foo", NOW));
+        assertEquals(-1, mCache.getExpiration("foo"));
+        assertResults("bar", 1, mCache.get("bar", NOW));
+    }
+
+    @Test
+    public void fullIndexKeepsTheMostRecentEntries() {
+        final int count = SLOT_COUNT * 2;
+        for (int i = 0; i < count; i++) mCache.put("query " + i, results("query " + i, 1), LATER);
+
+        // the last one is always kept, the first ones were compacted away
+        assertResults("query " + (count - 1), 1, mCache.get("query " + (count - 1), NOW));
+        assertNull(mCache.get("query 0", NOW));
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) if (mCache.get("query " + i, NOW) != null) kept++;
+        assertTrue(kept > 0 && kept <= SLOT_COUNT * .75f);
+    }
+
+    @Test
+    public void fullDataFileKeepsTheMostRecentEntries() throws IOException {
+        mCache.close();
+        final long maxDataSize = 4 * 1024;
+        mCache = open(new DiskSearchCache(mDirectory, maxDataSize, 1024));
+
+        for (int i = 0; i < 64; i++) mCache.put("query " + i, results("query " + i, 4), LATER);
+
+        assertResults("query 63", 4, mCache.get("query 63", NOW));
+        assertNull(mCache.get("query 0", NOW));
+        assertTrue(new File(mDirectory, "search.dat").length() <= maxDataSize);
+    }
+
+    @Test
+    public void tombstonesTriggerCompaction() {
+        // each expired lookup leaves a tombstone behind
+        for (int i = 0; i < SLOT_COUNT * 4; i++) {
+            mCache.put("query " + i, results("query " + i, 1), NOW - 1);
+            assertNull(mCache.get("query " + i, NOW));
+            assertTrue(mCache.getUsedSlotCount() <= SLOT_COUNT * .75f);
+        }
+
+        mCache.put("foo", results("foo", 2), LATER);
+        assertResults("foo", 2, mCache.get("foo", NOW));
+        assertEquals(-1, mCache.getExpiration("bar"));
+    }
+
+    @Test
+    public void compactionDropsExpiredEntries() {
+        mCache.put("expired", results("expired", 1), 0);
+        for (int i = 0; i < SLOT_COUNT; i++) mCache.put("query " + i, results("query " + i, 1), LATER);
+
+        // compacted with the current time, long after the expiration
+        assertEquals(-1, mCache.getExpiration("expired"));
+    }
+
+    private static DiskSearchCache open(DiskSearchCache cache) throws IOException {
+        cache.open();
+        return cache;
+    }
+
+    private static SearchResult[] results(String query, int count) {
+        final SearchResult[] results = new SearchResult[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = new SearchResult(query + " title " + i, query + " content " + i,
+                    "https://example.com/" + i, "example.com");
+        }
+        return results;
+    }
+
+    private static void assertResults(String query, int count, SearchResult[] results) {
+        assertNotNull(results);
+        assertEquals(count, results.length);
+        for (int i = 0; i < count; i++) {
+            assertEquals(query + " title " + i, results[i].title);
+            assertEquals(query + " content " + i, results[i].content);
+            assertEquals("https://example.com/" + i, results[i].url);
+            assertEquals("example.com", results[i].visibleUrl);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming reader with Gson's reflection, on a typical response. Run with
+ * {@code ./gradlew :sample:jmh}, rather than with the unit tests.
+ *
+ * Both paths prepare the styled titles of the results. On the JVM Html is a stub, so this
+ * only measures the parsing: the HTML work done on a device is the same for both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseConverterBenchmark {
+
+    private static final int RESULT_COUNT = 8;
+
+    private String mResponse;
+    private Gson mGson;
+
+    @Setup
+    public void setUp() {
+        mResponse = ResponseConverterFactoryTest.response(RESULT_COUNT);
+        mGson = new Gson();
+    }
+
+    @Benchmark
+    public Response streaming() throws IOException {
+        return ResponseConverterFactoryTest.read(mResponse);
+    }
+
+    @Benchmark
+    public Response gson() {
+        return readWithGson(mGson);
+    }
+
+    /**
+     * A fresh Gson builds its reflective adapters again, as on the first response.
+     */
+    @Benchmark
+    public Response gsonWithFreshAdapters() {
+        return readWithGson(new Gson());
+    }
+
+    private Response readWithGson(Gson gson) {
+        final Response response = gson.fromJson(mResponse, Response.class);
+        // as done by the streaming reader
+        SearchResult.prepare(response.responseData.results);
+        return response;
+    }
+}
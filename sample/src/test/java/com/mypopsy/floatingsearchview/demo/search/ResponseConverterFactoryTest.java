@@ -0,0 +1,106 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResponseConverterFactoryTest {
+
+    private static final int RESULT_COUNT = 8;
+
+    private static final String RESPONSE = response(RESULT_COUNT);
+
+    @Test
+    public void readsLikeGson() throws IOException {
+        final Response expected = new Gson().fromJson(RESPONSE, Response.class);
+        final Response actual = read(RESPONSE);
+
+        assertEquals(expected.responseStatus, actual.responseStatus);
+        assertEquals(expected.responseDetails, actual.responseDetails);
+        assertEquals(RESULT_COUNT, actual.responseData.results.length);
+        for (int i = 0; i < RESULT_COUNT; i++) {
+            final SearchResult e = expected.responseData.results[i];
+            final SearchResult a = actual.responseData.results[i];
+            assertEquals(e.title, a.title);
+            assertEquals(e.content, a.content);
+            assertEquals(e.url, a.url);
+            assertEquals(e.visibleUrl, a.visibleUrl);
+        }
+
+        final SearchCursor e = expected.responseData.cursor;
+        final SearchCursor a = actual.responseData.cursor;
+        assertEquals(e.estimatedResultCount, a.estimatedResultCount);
+        assertEquals(e.moreResultsUrl, a.moreResultsUrl);
+        assertEquals(e.currentPageIndex, a.currentPageIndex);
+        assertEquals(e.pages.length, a.pages.length);
+        for (int i = 0; i < e.pages.length; i++) {
+            assertEquals(e.pages[i].start, a.pages[i].start);
+            assertEquals(e.pages[i].label, a.pages[i].label);
+        }
+    }
+
+    @Test
+    public void skipsNullsAndUnknownFields() throws IOException {
+        final Response response = read("{\"responseStatus\":403,\"responseDetails\":null,"
+                + "\"unknown\":{\"nested\":[1,2,{}]},\"responseData\":null}");
+
+        assertEquals(403, response.responseStatus);
+        assertNull(response.responseDetails);
+        assertNull(response.responseData);
+    }
+
+    @Test
+    public void skipsNullResults() throws IOException {
+        final Response response = read("{\"responseData\":{\"results\":[null,"
+                + "{\"title\":\"foo\",\"url\":null}]}}");
+
+        assertNotNull(response.responseData);
+        assertEquals(1, response.responseData.results.length);
+        assertEquals("foo", response.responseData.results[0].title);
+        assertNull(response.responseData.results[0].url);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnexpectedStructures() throws IOException {
+        read("{\"responseData\":{\"results\":{}}}");
+    }
+
+    static Response read(String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return ResponseConverterFactory.readResponse(reader);
+        }
+    }
+
+    /**
+     * Returns a typical response with the given number of results.
+     */
+    static String response(int resultCount) {
+        final StringBuilder json = new StringBuilder("{\"responseData\":{\"results\":[");
+        for (int i = 0; i < resultCount; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"GsearchResultClass\":\"GwebSearch\",")
+                    .append("\"unescapedUrl\":\"https://example.com/page/").append(i).append("\",")
+                    .append("\"url\":\"https://example.com/page/").append(i).append("\",")
+                    .append("\"visibleUrl\":\"example.com\",")
+                    .append("\"cacheUrl\":\"http://www.google.com/search?q=cache:").append(i).append("\",")
+                    .append("\"title\":\"Result <b>").append(i).append("</b> &amp; more\",")
+                    .append("\"titleNoFormatting\":\"Result ").append(i).append(" & more\",")
+                    .append("\"content\":\"Some <b>content</b> for result ").append(i).append("\"}");
+        }
+        json.append("],\"cursor\":{\"resultCount\":\"1,234\",\"pages\":[")
+                .append("{\"start\":\"0\",\"label\":1},{\"start\":\"8\",\"label\":2}],")
+                .append("\"estimatedResultCount\":\"1234\",\"currentPageIndex\":0,")
+                .append("\"moreResultsUrl\":\"http://www.google.com/search?q=foo\",")
+                .append("\"searchResultTime\":\"0.21\"}},")
+                .append("\"responseDetails\":null,\"responseStatus\":200}");
+        return json.toString();
+    }
+}
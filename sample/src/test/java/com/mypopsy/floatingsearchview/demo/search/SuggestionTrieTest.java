@@ -0,0 +1,93 @@
+package com.mypopsy.floatingsearchview.demo.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SuggestionTrieTest {
+
+    private final SuggestionTrie mTrie = new SuggestionTrie.Builder()
+            .add("android", 50)
+            .add("android studio", 80)
+            .add("android auto", 30)
+            .add("apple", 90)
+            .add("applet", 10)
+            .add("banana", 20)
+            .build();
+
+    @Test
+    public void visitsTheBestTermsFirst() {
+        assertEquals(Arrays.asList("apple", "android studio", "android", "android auto", "applet"),
+                find("a", 10));
+    }
+
+    @Test
+    public void stopsAfterTopK() {
+        assertEquals(Arrays.asList("apple", "android studio"), find("a", 2));
+        assertEquals(Arrays.asList("android studio"), find("android", 1));
+    }
+
+    @Test
+    public void prefixMayEndInTheMiddleOfAnEdge() {
+        // "andr" ends inside the compressed "ndroid" label
+        assertEquals(Arrays.asList("android studio", "android", "android auto"), find("andr", 10));
+        assertEquals(Arrays.asList("android studio"), find("android st", 10));
+        assertEquals(Arrays.asList("banana"), find("ban", 10));
+    }
+
+    @Test
+    public void prefixMayBeATerm() {
+        assertEquals(Arrays.asList("apple", "applet"), find("apple", 10));
+        assertEquals(Arrays.asList("applet"), find("applet", 10));
+    }
+
+    @Test
+    public void unknownPrefixesFindNothing() {
+        assertTrue(find("andy", 10).isEmpty());
+        assertTrue(find("androids", 10).isEmpty());
+        assertTrue(find("c", 10).isEmpty());
+        assertTrue(find("a", 0).isEmpty());
+    }
+
+    @Test
+    public void emptyPrefixVisitsEverything() {
+        assertEquals(6, find("", 10).size());
+        assertEquals("apple", find("", 1).get(0));
+    }
+
+    @Test
+    public void duplicatesKeepTheBestScore() {
+        final SuggestionTrie trie = new SuggestionTrie.Builder()
+                .add("foo", 1)
+                .add("foo", 5)
+                .add("foo", 3)
+                .add("fox", 4)
+                .build();
+        final List<String> terms = new ArrayList<>();
+        final List<Integer> scores = new ArrayList<>();
+        trie.find("fo", 10, (term, score) -> {
+            terms.add(term);
+            scores.add(score);
+        });
+        assertEquals(Arrays.asList("foo", "fox"), terms);
+        assertEquals(Arrays.asList(5, 4), scores);
+    }
+
+    @Test
+    public void chainsAreCompressed() {
+        final SuggestionTrie trie = new SuggestionTrie.Builder().add("abcdef", 1).build();
+        // the root and a single edge
+        assertEquals(2, trie.getNodeCount());
+    }
+
+    private List<String> find(String prefix, int k) {
+        final List<String> terms = new ArrayList<>();
+        mTrie.find(prefix, k, (term, score) -> terms.add(term));
+        return terms;
+    }
+}